@@ -3,9 +3,11 @@ package org.lrima.laop.core;
 import org.lrima.laop.network.DL4J.DL4JLearning;
 import org.lrima.laop.network.FUCONN.GeneticLearning;
 import org.lrima.laop.network.LearningAlgorithm;
+import org.lrima.laop.network.nn.Precision;
 import org.lrima.laop.plugin.PluginLoader;
 import org.lrima.laop.settings.Settings;
 import org.lrima.laop.settings.option.OptionClass;
+import org.lrima.laop.settings.option.OptionEnum;
 import org.lrima.laop.simulation.BetterEnvironnement;
 import org.lrima.laop.simulation.Environnement;
 import org.lrima.laop.simulation.LearningEngine;
@@ -64,6 +66,13 @@ public class LAOP {
         settings.set(Settings.GLOBAL_SCOPE, KEY_NUMBER_OF_SENSORS, DEFAULT_NUMBER_OF_SENSORS);
         settings.set(Settings.GLOBAL_SCOPE, KEY_ENVIRONNEMENT_CLASS, new OptionClass<>(DEFAULT_ENVIRONNEMENT_CLASS, environnements));
         settings.set(Settings.GLOBAL_SCOPE, KEY_MAP_SIZE, DEFAULT_MAP_SIZE);
+        settings.set(Settings.GLOBAL_SCOPE, KEY_NUMBER_OF_THREADS, DEFAULT_NUMBER_OF_THREADS);
+        settings.set(Settings.GLOBAL_SCOPE, KEY_NUMBER_OF_CONCURRENT_ALGORITHMS, DEFAULT_NUMBER_OF_CONCURRENT_ALGORITHMS);
+        settings.set(Settings.GLOBAL_SCOPE, KEY_HEADLESS_SNAPSHOT_INTERVAL, DEFAULT_HEADLESS_SNAPSHOT_INTERVAL);
+        settings.set(Settings.GLOBAL_SCOPE, KEY_TEST_MAPS_SEED, DEFAULT_TEST_MAPS_SEED);
+        settings.set(Settings.GLOBAL_SCOPE, KEY_MAP_CACHE_DIRECTORY, DEFAULT_MAP_CACHE_DIRECTORY);
+        settings.set(Settings.GLOBAL_SCOPE, KEY_MAP_CHUNK_SIZE, DEFAULT_MAP_CHUNK_SIZE);
+        settings.set(Settings.GLOBAL_SCOPE, KEY_INFERENCE_PRECISION, new OptionEnum<>(DEFAULT_INFERENCE_PRECISION));
     }
 
     /**
@@ -131,6 +140,10 @@ public class LAOP {
             MainSimulationStage mainSimulationStage = new MainSimulationStage(learningEngine);
             mainSimulationStage.show();
         }
+        else{
+            //Nothing is drawn, so only keep the snapshots that are asked for
+            simulationBuffer.setCaptureInterval((int) settings.get(Settings.GLOBAL_SCOPE, KEY_HEADLESS_SNAPSHOT_INTERVAL));
+        }
 
         learningEngine.start();
     }
@@ -186,4 +199,39 @@ public class LAOP {
 
     public static final String KEY_MAP_SIZE = "MAP_SIZE";
     public static final int DEFAULT_MAP_SIZE = 10;
-}
\ No newline at end of file
+
+    /** Constant <code>KEY_NUMBER_OF_THREADS="NUMBER OF THREADS"</code> */
+    public static final String KEY_NUMBER_OF_THREADS = "NUMBER OF THREADS";
+    /** Constant <code>DEFAULT_NUMBER_OF_THREADS=1</code>. With one thread, the simulation is not parallelised */
+    public static final int DEFAULT_NUMBER_OF_THREADS = 1;
+
+    /** Constant <code>KEY_NUMBER_OF_CONCURRENT_ALGORITHMS="NUMBER OF CONCURRENT ALGORITHMS"</code> */
+    public static final String KEY_NUMBER_OF_CONCURRENT_ALGORITHMS = "NUMBER OF CONCURRENT ALGORITHMS";
+    /** Constant <code>DEFAULT_NUMBER_OF_CONCURRENT_ALGORITHMS=1</code>. With one, the algorithms are trained one after the other */
+    public static final int DEFAULT_NUMBER_OF_CONCURRENT_ALGORITHMS = 1;
+
+    /** Constant <code>KEY_HEADLESS_SNAPSHOT_INTERVAL="HEADLESS SNAPSHOT INTERVAL"</code> */
+    public static final String KEY_HEADLESS_SNAPSHOT_INTERVAL = "HEADLESS SNAPSHOT INTERVAL";
+    /** Constant <code>DEFAULT_HEADLESS_SNAPSHOT_INTERVAL=0</code>. Without interface, no snapshot is kept by default */
+    public static final int DEFAULT_HEADLESS_SNAPSHOT_INTERVAL = 0;
+
+    /** Constant <code>KEY_TEST_MAPS_SEED="TEST MAPS SEED"</code> */
+    public static final String KEY_TEST_MAPS_SEED = "TEST MAPS SEED";
+    /** Constant <code>DEFAULT_TEST_MAPS_SEED=0</code>. The test map i is generated with the seed plus i */
+    public static final int DEFAULT_TEST_MAPS_SEED = 0;
+
+    /** Constant <code>KEY_MAP_CACHE_DIRECTORY="MAP CACHE DIRECTORY"</code> */
+    public static final String KEY_MAP_CACHE_DIRECTORY = "MAP CACHE DIRECTORY";
+    /** Constant <code>DEFAULT_MAP_CACHE_DIRECTORY=""</code>. Without directory, the test maps are generated at each run */
+    public static final String DEFAULT_MAP_CACHE_DIRECTORY = "";
+
+    /** Constant <code>KEY_MAP_CHUNK_SIZE="MAP CHUNK SIZE"</code> */
+    public static final String KEY_MAP_CHUNK_SIZE = "MAP CHUNK SIZE";
+    /** Constant <code>DEFAULT_MAP_CHUNK_SIZE=0</code>. With 0, the mazes are generated at once. Otherwise, they are generated by chunks of this number of squares */
+    public static final int DEFAULT_MAP_CHUNK_SIZE = 0;
+
+    /** Constant <code>KEY_INFERENCE_PRECISION="INFERENCE PRECISION"</code> */
+    public static final String KEY_INFERENCE_PRECISION = "INFERENCE PRECISION";
+    /** Constant <code>DEFAULT_INFERENCE_PRECISION=Precision.DOUBLE</code>. The precision of the weights of the networks evaluated together */
+    public static final Precision DEFAULT_INFERENCE_PRECISION = Precision.DOUBLE;
+}
@@ -2,6 +2,7 @@ package org.lrima.laop.network.FUCONN;
 
 import org.lrima.laop.network.nn.NeuralNetwork;
 import org.lrima.laop.physic.CarControls;
+import org.lrima.laop.simulation.BatchEnvironnement;
 import org.lrima.laop.utils.MathUtils;
 import org.lrima.laop.utils.math.RandomUtils;
 
@@ -13,6 +14,8 @@ import org.lrima.laop.utils.math.RandomUtils;
 public class FUCONN {
     NeuralNetwork neuralNetwork;
     double fitness;
+    //Prediction of the network, reused at each step of a batch environnement
+    private final double[] output = new double[BatchEnvironnement.ACTION_SIZE];
 
     /**
      * Creates a new instance of FUCONN that has similar properties as the this and other.
@@ -21,12 +24,30 @@ public class FUCONN {
      * @return a new neural network that has similar proprieties as the two other (this and the one in parameters)
      */
     public FUCONN crossOver(FUCONN otherGeneticNeuralNetwork) {
+        FUCONN newNetwork = new FUCONN();
+        newNetwork.neuralNetwork = new NeuralNetwork(this.neuralNetwork.getTopology(), new double[this.neuralNetwork.getGenome().length]);
+
+        crossOver(otherGeneticNeuralNetwork, newNetwork);
+
+        return newNetwork;
+    }
+
+    /**
+     * Replaces the network of child by a network that has similar properties as the this and other. The weights are written
+     * directly in the genome of child, so nothing is allocated
+     *
+     * @param otherGeneticNeuralNetwork - the other FUCONN
+     * @param child - the FUCONN receiving the new network. It must have the same topology
+     */
+    public void crossOver(FUCONN otherGeneticNeuralNetwork, FUCONN child) {
         FUCONN other = otherGeneticNeuralNetwork;
 
         //WEIGHTS
-        double[] weightOther = other.neuralNetwork.getAllWeights();
-        double[] weightThis = this.neuralNetwork.getAllWeights();
-        double[] newWeights = new double[weightOther.length];
+        double[] weightOther = other.neuralNetwork.getGenome();
+        double[] weightThis = this.neuralNetwork.getGenome();
+        double[] newWeights = child.neuralNetwork.getGenome();
+        if(weightOther.length != weightThis.length || newWeights.length != weightThis.length)
+            throw new IllegalArgumentException("The networks must have the same topology to be crossed over");
 
         for (int i = 0; i < newWeights.length; i++) {
             newWeights[i] = RandomUtils.getBoolean()? weightOther[i] : weightThis[i];
@@ -35,11 +56,6 @@ public class FUCONN {
                 newWeights[i] = RandomUtils.getDouble(-5, 5);
             }
         }
-
-        FUCONN newNetwork = new FUCONN();
-        newNetwork.neuralNetwork = new NeuralNetwork(this.neuralNetwork.getTopology(), newWeights);
-
-        return newNetwork;
     }
 
     /**
@@ -52,6 +68,19 @@ public class FUCONN {
         return new CarControls(neuralNetwork.predict(captorValues));
     }
 
+    /**
+     * Writes the controls depending on the captor values in the array of actions of a batch environnement
+     *
+     * @param captorValues - the values of the captors
+     * @param actions - the actions of all the agents
+     * @param agent - the index of the agent controlled by this network
+     */
+    public void control(double[] captorValues, double[] actions, int agent) {
+        neuralNetwork.predict(captorValues, output);
+        actions[agent * BatchEnvironnement.ACTION_SIZE] = output[0];
+        actions[agent * BatchEnvironnement.ACTION_SIZE + 1] = output[1];
+    }
+
     /**
      * Initialize the neural network.
      *
@@ -1,12 +1,19 @@
 package org.lrima.laop.network.FUCONN;
 
+import org.lrima.laop.core.LAOP;
 import org.lrima.laop.network.LearningAlgorithm;
+import org.lrima.laop.network.nn.NetworkCompiler;
+import org.lrima.laop.network.nn.NetworkEvaluator;
+import org.lrima.laop.network.nn.PopulationNetwork;
+import org.lrima.laop.network.nn.Precision;
 import org.lrima.laop.physic.CarControls;
 import org.lrima.laop.simulation.Agent;
+import org.lrima.laop.simulation.BatchEnvironnement;
 import org.lrima.laop.simulation.Environnement;
 import org.lrima.laop.simulation.LearningEngine;
 import org.lrima.laop.simulation.MultiAgentEnvironnement;
 import org.lrima.laop.simulation.sensors.Sensor;
+import org.lrima.laop.utils.MathUtils;
 import org.lrima.laop.utils.math.RandomUtils;
 
 import java.lang.reflect.Array;
@@ -21,6 +28,10 @@ import java.util.stream.Collectors;
 public class GeneticLearning implements LearningAlgorithm{
     ArrayList<FUCONN> geneticNN;
     private int NUMBER_CAR = 100;
+    private int testFrequance;
+    //The best network compiled when the training is done, used to test when the sensors fit its inputs
+    private NetworkEvaluator champion;
+    private int championInputSize;
 
     /**
      * Makes the array of cars better by doing the three main phases : evaluation, selection and reproduction
@@ -31,21 +42,18 @@ public class GeneticLearning implements LearningAlgorithm{
     private ArrayList<FUCONN> learn(ArrayList<FUCONN> cars) {
         //Selection : keep only 50% best cars
         final int initialNumberOfCar = this.NUMBER_CAR;
-        ArrayList<FUCONN> bestPerformingCars = new ArrayList<>();
-        for(int i = 0 ; i < initialNumberOfCar / 2 ; i++) {
+        final int numberOfBestCars = initialNumberOfCar / 2;
+        for(int i = 0 ; i < numberOfBestCars ; i++) {
             cars.get(i).setFitness(0);
-            bestPerformingCars.add(cars.get(i));
         }
-        cars = bestPerformingCars;
 
-        //Repopulation : repopulate the set of cars with newly generated ones
-        while(cars.size() < initialNumberOfCar){
-            FUCONN random1 = bestPerformingCars.get(RandomUtils.getInteger(0, bestPerformingCars.size()-1));
-            FUCONN random2 = bestPerformingCars.get(RandomUtils.getInteger(0, bestPerformingCars.size()-1));
+        //Repopulation : replace the other cars with newly generated ones, written in their networks so no network is allocated
+        for(int i = numberOfBestCars ; i < initialNumberOfCar ; i++){
+            FUCONN random1 = cars.get(RandomUtils.getInteger(0, numberOfBestCars-1));
+            FUCONN random2 = cars.get(RandomUtils.getInteger(0, numberOfBestCars-1));
 
-            FUCONN geneticNeuralNetwork = random1.crossOver(random2);
-
-            cars.add(geneticNeuralNetwork);
+            random1.crossOver(random2, cars.get(i));
+            cars.get(i).setFitness(0);
         }
 
         return cars;
@@ -60,9 +68,7 @@ public class GeneticLearning implements LearningAlgorithm{
     }
 
     @Override
-    public void train(Environnement env1, LearningEngine learningEngine) {
-        MultiAgentEnvironnement env = (MultiAgentEnvironnement) env1;
-
+    public void train(Environnement env, LearningEngine learningEngine) {
         geneticNN = new ArrayList<>();
 
         for (int i = 0; i < this.NUMBER_CAR; i++) {
@@ -71,8 +77,90 @@ public class GeneticLearning implements LearningAlgorithm{
             geneticNN.add(e);
         }
 
-        int testFrequance = 0;
+        testFrequance = 0;
+        champion = null;
+
+        if(env instanceof BatchEnvironnement)
+            trainBatch((BatchEnvironnement) env, learningEngine);
+        else
+            trainAgents((MultiAgentEnvironnement) env, learningEngine);
 
+        //The best network does not change anymore, so it is compiled for the tests
+        championInputSize = geneticNN.get(0).neuralNetwork.getTopology()[0];
+        champion = NetworkCompiler.compile(geneticNN.get(0).neuralNetwork);
+    }
+
+    /**
+     * Trains the cars in an environnement that steps all the cars at once with arrays
+     *
+     * @param env the environnement
+     * @param learningEngine the learning engine
+     */
+    private void trainBatch(BatchEnvironnement env, LearningEngine learningEngine) {
+        int observationSize = env.getObservationSize();
+        double[] observations = new double[this.NUMBER_CAR * observationSize];
+        double[] rewards = new double[this.NUMBER_CAR];
+        boolean[] done = new boolean[this.NUMBER_CAR];
+        double[] actions = new double[this.NUMBER_CAR * BatchEnvironnement.ACTION_SIZE];
+        double[] sensorValues = new double[observationSize];
+
+        //All the networks have the same topology, so they are evaluated together when the observations fit their inputs
+        int[] topology = geneticNN.get(0).neuralNetwork.getTopology();
+        PopulationNetwork population = null;
+        if(topology[0] == observationSize && topology[topology.length - 1] == BatchEnvironnement.ACTION_SIZE) {
+            Precision precision = (Precision) learningEngine.getSettings().get(LAOP.KEY_INFERENCE_PRECISION);
+            population = new PopulationNetwork(topology, this.NUMBER_CAR, MathUtils.TANH, precision);
+            setPopulationWeights(population);
+        }
+
+        env.reset(observations, rewards, done);
+        while(learningEngine.whileButtonNotPressed()){
+            while(!env.isFinished()){
+                for (int i = 0; i < geneticNN.size(); i++) {
+                    geneticNN.get(i).setFitness(rewards[i] + geneticNN.get(i).getFitness());
+                }
+
+                if(population != null) {
+                    population.predict(observations, actions);
+                }
+                else {
+                    for (int i = 0; i < geneticNN.size(); i++) {
+                        System.arraycopy(observations, i * observationSize, sensorValues, 0, observationSize);
+                        geneticNN.get(i).control(sensorValues, actions, i);
+                    }
+                }
+
+                env.step(actions, observations, rewards, done);
+                env.render();
+            }
+
+            //The networks only change with a new generation
+            if(endEpisode(learningEngine) && population != null)
+                setPopulationWeights(population);
+
+            env.reset(observations, rewards, done);
+            env.newMap();
+        }
+    }
+
+    /**
+     * Copies the weights of the networks of the cars in the population network
+     *
+     * @param population the population network
+     */
+    private void setPopulationWeights(PopulationNetwork population) {
+        for (int i = 0; i < geneticNN.size(); i++) {
+            population.setWeights(i, geneticNN.get(i).neuralNetwork.getGenome());
+        }
+    }
+
+    /**
+     * Trains the cars in an environnement that steps the cars with agents
+     *
+     * @param env the environnement
+     * @param learningEngine the learning engine
+     */
+    private void trainAgents(MultiAgentEnvironnement env, LearningEngine learningEngine) {
         ArrayList<Agent> agents = env.reset(this.NUMBER_CAR);
         while(learningEngine.whileButtonNotPressed()){
             while(!env.isFinished()){
@@ -87,21 +175,45 @@ public class GeneticLearning implements LearningAlgorithm{
                 env.render();
             }
 
-            if(testFrequance++ > 10){
-                sortByBest(geneticNN);
-                learningEngine.evaluate(this);
-                geneticNN = learn(geneticNN);
-                testFrequance = 0;
-            }
+            endEpisode(learningEngine);
 
             agents = env.reset(geneticNN.size());
             env.newMap();
         }
     }
 
+    /**
+     * Called at the end of each episode. Every few episodes, evaluates the best car and creates a new generation
+     *
+     * @param learningEngine the learning engine
+     * @return true if a new generation was created, false if the networks did not change
+     */
+    private boolean endEpisode(LearningEngine learningEngine) {
+        if(testFrequance++ > 10){
+            sortByBest(geneticNN);
+            learningEngine.evaluate(this);
+            geneticNN = learn(geneticNN);
+            testFrequance = 0;
+            return true;
+        }
+
+        return false;
+    }
+
     @Override
     public CarControls test(Agent agent) {
         double[] sensorValues = agent.getSensors().stream().mapToDouble(Sensor::getValue).toArray();
+        if(champion != null && sensorValues.length == championInputSize) {
+            double[] output = new double[BatchEnvironnement.ACTION_SIZE];
+            champion.predict(sensorValues, output);
+            return new CarControls(output);
+        }
+
         return geneticNN.get(0).control(sensorValues);
     }
+
+    @Override
+    public boolean canBeTestedConcurrently() {
+        return true;
+    }
 }
@@ -27,4 +27,13 @@ public interface LearningAlgorithm{
      * @return the car controls.
      */
     CarControls test(Agent agent);
+
+    /**
+     * Returns true if {@link #test(Agent)} can be called from multiple threads at the same time, allowing the algorithm to be evaluated in parallel.
+     *
+     * @return true if the algorithm can be tested concurrently, false otherwise
+     */
+    default boolean canBeTestedConcurrently() {
+        return false;
+    }
 }
@@ -4,17 +4,27 @@ import org.lrima.laop.utils.MathUtils;
 import org.lrima.laop.utils.math.RandomUtils;
 
 import java.util.Arrays;
-import java.util.function.Function;
+import java.util.function.DoubleUnaryOperator;
 
 /**
  * Class that represents a Dense layer of a neural network.
+ * The weights are kept in one array, row by row: the row of a neuron contains the weights of its connections to the neurons of the previous layer, then its bias.
+ * The array can be shared with the other layers of a network, the weights of the layer then start at an offset in it.
  *
  * @author Léonard
  */
 public class DenseLayer implements Layer {
-    private double[][] weights;
-    private Function<Double, Double> activationFunction;
+    private double[] weights;
+    private int offset;
+    private DoubleUnaryOperator activationFunction;
     private int size;
+    private int previousLayerSize;
+
+    private Precision precision = Precision.DOUBLE;
+    //Reduced weights computed from the weights when the precision is set
+    private float[] floatWeights;
+    private byte[] quantizedWeights;
+    private float[] scales, biases;
 
 
     /**
@@ -24,15 +34,12 @@ public class DenseLayer implements Layer {
      * @param previousLayerSize the previous layer's number of neurons (to adjust the number of weights accordingly)
      * @param activationFunction the activation function of this layer
      */
-    public DenseLayer(int size, int previousLayerSize, Function<Double, Double> activationFunction){
-        this.size = size;
-        this.activationFunction = activationFunction;
-
-        this.weights = new double[this.size][previousLayerSize + 1];
+    public DenseLayer(int size, int previousLayerSize, DoubleUnaryOperator activationFunction){
+        this(size, previousLayerSize, new double[size * (previousLayerSize + 1)], activationFunction);
 
         for(int i = 0; i < this.size;i++){
             for(int j = 0; j < previousLayerSize; j++){
-                weights[i][j] = getRandomWeight();
+                weights[i * (previousLayerSize + 1) + j] = getRandomWeight();
             }
         }
     }
@@ -43,10 +50,53 @@ public class DenseLayer implements Layer {
      * @param weights A matrix of weights. Its size becomes the size of this layer. The first column is the current neuron and the rows are all the connections to the neurons.
      * @param activationFunction the activation function
      */
-    public DenseLayer(double[][] weights, Function<Double, Double> activationFunction){
+    public DenseLayer(double[][] weights, DoubleUnaryOperator activationFunction){
+        this(weights.length, weights.length == 0 ? 0 : weights[0].length - 1, flatten(weights), activationFunction);
+    }
+
+    /**
+     * Created a Dense layer using an array of weights and bias. The array is used by the layer, it is not copied
+     *
+     * @param size the number of neurons of this layer
+     * @param previousLayerSize the previous layer's number of neurons
+     * @param weights the weights and bias of the neurons, row by row. Its length is <code>size * (previousLayerSize + 1)</code>
+     * @param activationFunction the activation function
+     */
+    public DenseLayer(int size, int previousLayerSize, double[] weights, DoubleUnaryOperator activationFunction){
+        this(size, previousLayerSize, weights, 0, activationFunction);
+    }
+
+    /**
+     * Created a Dense layer using a part of an array of weights and bias, like the genome of a network. The array is used by the layer, it is not copied
+     *
+     * @param size the number of neurons of this layer
+     * @param previousLayerSize the previous layer's number of neurons
+     * @param weights the array containing the weights and bias of the neurons, row by row
+     * @param offset the index of the first weight of the layer in the array
+     * @param activationFunction the activation function
+     */
+    public DenseLayer(int size, int previousLayerSize, double[] weights, int offset, DoubleUnaryOperator activationFunction){
+        this.size = size;
+        this.previousLayerSize = previousLayerSize;
         this.weights = weights;
+        this.offset = offset;
         this.activationFunction = activationFunction;
-        this.size = this.weights.length;
+    }
+
+    /**
+     * Puts the rows of a matrix of weights one after the other
+     *
+     * @param weights the matrix of weights
+     * @return the weights, row by row
+     */
+    private static double[] flatten(double[][] weights) {
+        int rowLength = weights.length == 0 ? 0 : weights[0].length;
+        double[] flat = new double[weights.length * rowLength];
+        for (int i = 0; i < weights.length; i++) {
+            System.arraycopy(weights[i], 0, flat, i * rowLength, rowLength);
+        }
+
+        return flat;
     }
 
     /**
@@ -66,44 +116,133 @@ public class DenseLayer implements Layer {
     @Override
     public double[] feedFoward(double[] data) {
         double[] output = new double[this.size];
-
-        for(int i = 0; i < this.size; i++){
-            output[i] = getWeightedSum(i, data);
-        }
+        feedFoward(data, output);
 
         return output;
     }
 
     /**
-     * Calculates the weithed sum of the neuron at index <code>neuron</code> with weights <code> weights</code>
+     * Feed foward the data using the weighted sum of each neuron.
      *
-     * @param neuron the index of the current neuron being calculated
-     * @param neuronValues the weights of the current neuron
-     * @return
-     */
-    private double getWeightedSum(int neuron, double[] neuronValues) {
-        double sum = 0;
-        for(int i = 0; i < neuronValues.length; i++){
-            sum += this.weights[neuron][i] * neuronValues[i];
+     * @param data the data of the previous layer or the inputs
+     * @param output the data of all the outputings nodes
+     */
+    @Override
+    public void feedFoward(double[] data, double[] output) {
+        if(precision != Precision.DOUBLE){
+            if(data.length != previousLayerSize)
+                throw new IllegalArgumentException("The layer needs " + previousLayerSize + " inputs, not " + data.length);
+
+            if(precision == Precision.FLOAT)
+                LayerKernels.dense(floatWeights, 0, previousLayerSize, size, data, 0, output, 0, activationFunction);
+            else
+                LayerKernels.dense(quantizedWeights, 0, scales, biases, 0, previousLayerSize, size, data, 0, output, 0, activationFunction);
+            return;
         }
 
-        //BIAS
-        sum += this.weights[neuron][neuronValues.length];
+        int rowLength = previousLayerSize + 1;
 
-        sum = activationFunction.apply(sum);
+        for(int neuron = 0, row = offset; neuron < this.size; neuron++, row += rowLength){
+            double sum = 0;
+            for(int i = 0; i < data.length; i++){
+                sum += this.weights[row + i] * data[i];
+            }
 
-        return sum;
+            //BIAS
+            sum += this.weights[row + data.length];
+
+            output[neuron] = activationFunction.applyAsDouble(sum);
+        }
     }
 
     @Override
     public int size() {
-        return weights.length;
+        return size;
     }
 
+    /**
+     * Sets the precision of the weights used by {@link #feedFoward(double[], double[])}. The reduced weights are computed from the current weights,
+     * so the precision must be set again if the weights are modified
+     *
+     * @param precision the precision
+     */
+    public void setPrecision(Precision precision) {
+        this.precision = precision;
+        this.floatWeights = null;
+        this.quantizedWeights = null;
+        this.scales = null;
+        this.biases = null;
+
+        if(precision == Precision.FLOAT){
+            floatWeights = new float[getNumberOfWeights()];
+            LayerKernels.round(weights, offset, floatWeights, 0, floatWeights.length);
+        }
+        else if(precision == Precision.INT8){
+            quantizedWeights = new byte[size * previousLayerSize];
+            scales = new float[size];
+            biases = new float[size];
+            LayerKernels.quantize(weights, offset, previousLayerSize, size, quantizedWeights, 0, scales, biases, 0);
+        }
+    }
+
+    /**
+     * @return the precision of the weights used to feed foward
+     */
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    /**
+     * @return a copy of the weights, with one row per neuron. The bias is the last column
+     */
     public double[][] getWeights() {
+        double[][] rows = new double[size][];
+        for (int i = 0; i < size; i++) {
+            rows[i] = Arrays.copyOfRange(weights, offset + i * (previousLayerSize + 1), offset + (i + 1) * (previousLayerSize + 1));
+        }
+
+        return rows;
+    }
+
+    /**
+     * @return the array containing the weights used by the layer, row by row from {@link #getWeightOffset()}. It can contain the weights of other layers
+     */
+    public double[] getFlatWeights() {
         return weights;
     }
 
+    /**
+     * @return the activation function of the layer
+     */
+    public DoubleUnaryOperator getActivationFunction() {
+        return activationFunction;
+    }
+
+    /**
+     * @return the index of the first weight of the layer in {@link #getFlatWeights()}
+     */
+    public int getWeightOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the number of weights and bias of the layer
+     */
+    public int getNumberOfWeights() {
+        return size * (previousLayerSize + 1);
+    }
+
+    /**
+     * Makes the layer use a part of another array of weights, like a new genome containing the same weights. The array is not copied
+     *
+     * @param weights the array containing the weights and bias of the neurons, row by row
+     * @param offset the index of the first weight of the layer in the array
+     */
+    void setFlatWeights(double[] weights, int offset) {
+        this.weights = weights;
+        this.offset = offset;
+    }
+
     public static void main(String[] args){
         NeuralNetwork neuralNetwork = new NeuralNetwork(5);
         neuralNetwork.addDenseLayer(2, MathUtils.LOGISTIC);
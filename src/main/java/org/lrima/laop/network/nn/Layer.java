@@ -21,4 +21,16 @@ public interface Layer {
      * @return the new data
      */
     public double[] feedFoward(double[] data);
+
+    /**
+     * Calculated the feedFoward according of the inputs <code>data</code> and puts it in an existing array.
+     * The layers can override it so that nothing is allocated, by default it copies the data of {@link #feedFoward(double[])}
+     *
+     * @param data the inputs
+     * @param output the array receiving the new data, at least of the size of the layer
+     */
+    default void feedFoward(double[] data, double[] output) {
+        double[] result = feedFoward(data);
+        System.arraycopy(result, 0, output, 0, result.length);
+    }
 }
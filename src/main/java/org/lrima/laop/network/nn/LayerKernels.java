@@ -0,0 +1,134 @@
+package org.lrima.laop.network.nn;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Loops computing dense layers in each {@link Precision}, shared by {@link DenseLayer} and {@link PopulationNetwork}.
+ * The weights of a neuron are a row: its weights for each input then its bias. In INT8, the rows only contain the weights,
+ * and the scale and the bias of each row are in their own arrays.
+ *
+ * @author Léonard
+ */
+final class LayerKernels {
+    private LayerKernels() {}
+
+    /**
+     * Computes the weighted sums of a dense layer with double weights
+     *
+     * @param weights the weights of the layer
+     * @param weight the index of the first weight of the layer
+     * @param inputSize the number of inputs of the layer
+     * @param size the number of neurons of the layer
+     * @param data the inputs
+     * @param input the index of the first input
+     * @param output receives the outputs
+     * @param neuron the index of the output of the first neuron
+     * @param activationFunction the activation function
+     */
+    static void dense(double[] weights, int weight, int inputSize, int size, double[] data, int input, double[] output, int neuron, DoubleUnaryOperator activationFunction) {
+        for (int i = 0; i < size; i++) {
+            double sum = 0;
+            for (int j = 0; j < inputSize; j++) {
+                sum += weights[weight + j] * data[input + j];
+            }
+
+            //BIAS
+            sum += weights[weight + inputSize];
+
+            output[neuron + i] = activationFunction.applyAsDouble(sum);
+            weight += inputSize + 1;
+        }
+    }
+
+    /**
+     * Computes the weighted sums of a dense layer with float weights. The sums are made in float
+     *
+     * @see #dense(double[], int, int, int, double[], int, double[], int, DoubleUnaryOperator)
+     */
+    static void dense(float[] weights, int weight, int inputSize, int size, double[] data, int input, double[] output, int neuron, DoubleUnaryOperator activationFunction) {
+        for (int i = 0; i < size; i++) {
+            float sum = 0;
+            for (int j = 0; j < inputSize; j++) {
+                sum += weights[weight + j] * (float) data[input + j];
+            }
+
+            //BIAS
+            sum += weights[weight + inputSize];
+
+            output[neuron + i] = activationFunction.applyAsDouble(sum);
+            weight += inputSize + 1;
+        }
+    }
+
+    /**
+     * Computes the weighted sums of a dense layer with quantized weights. The quantized weights are summed then scaled, in float
+     *
+     * @param quantized the quantized weights of the layer, without the bias
+     * @param weight the index of the first quantized weight of the layer
+     * @param scales the scale of each row
+     * @param biases the bias of each row
+     * @param row the index of the row of the first neuron in the scales and the biases
+     * @see #dense(double[], int, int, int, double[], int, double[], int, DoubleUnaryOperator)
+     */
+    static void dense(byte[] quantized, int weight, float[] scales, float[] biases, int row, int inputSize, int size, double[] data, int input, double[] output, int neuron, DoubleUnaryOperator activationFunction) {
+        for (int i = 0; i < size; i++) {
+            float sum = 0;
+            for (int j = 0; j < inputSize; j++) {
+                sum += quantized[weight + j] * (float) data[input + j];
+            }
+
+            sum = sum * scales[row + i] + biases[row + i];
+
+            output[neuron + i] = activationFunction.applyAsDouble(sum);
+            weight += inputSize;
+        }
+    }
+
+    /**
+     * Rounds double weights to floats
+     *
+     * @param weights the weights
+     * @param from the index of the first weight
+     * @param to the array receiving the floats
+     * @param at the index of the first float
+     * @param length the number of weights
+     */
+    static void round(double[] weights, int from, float[] to, int at, int length) {
+        for (int i = 0; i < length; i++) {
+            to[at + i] = (float) weights[from + i];
+        }
+    }
+
+    /**
+     * Quantizes the rows of double weights. The scale of a row maps its largest weight to 127 or -127,
+     * and each weight becomes the nearest multiple of the scale
+     *
+     * @param weights the double weights of the layer, with the bias at the end of each row
+     * @param weight the index of the first weight of the layer
+     * @param inputSize the number of inputs of the layer
+     * @param size the number of neurons of the layer
+     * @param quantized receives the quantized weights
+     * @param at the index of the first quantized weight of the layer
+     * @param scales receives the scale of each row
+     * @param biases receives the bias of each row
+     * @param row the index of the row of the first neuron in the scales and the biases
+     */
+    static void quantize(double[] weights, int weight, int inputSize, int size, byte[] quantized, int at, float[] scales, float[] biases, int row) {
+        for (int i = 0; i < size; i++) {
+            double max = 0;
+            for (int j = 0; j < inputSize; j++) {
+                max = Math.max(max, Math.abs(weights[weight + j]));
+            }
+
+            double scale = max == 0 ? 1 : max / 127;
+            for (int j = 0; j < inputSize; j++) {
+                quantized[at + j] = (byte) Math.round(weights[weight + j] / scale);
+            }
+            scales[row + i] = (float) scale;
+            biases[row + i] = (float) weights[weight + inputSize];
+
+            weight += inputSize + 1;
+            at += inputSize;
+        }
+    }
+}
@@ -0,0 +1,452 @@
+package org.lrima.laop.network.nn;
+
+import org.lrima.laop.utils.MathUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Compiles a neural network into a class made for its topology and its weights. <br/>
+ * The generated class computes the network without any loop: each weight is a constant in the bytecode and the outputs of the hidden layers
+ * are local variables, so the JIT can keep them in registers. The predictions are exactly the same as {@link NeuralNetwork#predict(double[])}. <br/>
+ * Only networks of dense layers in DOUBLE using {@link MathUtils#TANH} or {@link MathUtils#LOGISTIC} can be compiled, and only if their prediction
+ * is short enough for the JIT to compile it: the bigger networks are faster with the loops of their layers.
+ * The other networks get an evaluator using their layers, so {@link #compile(NeuralNetwork)} can be used with any network.
+ *
+ * @author Léonard
+ */
+public final class NetworkCompiler {
+    //HotSpot does not JIT-compile the methods of more than 8000 bytes of bytecode (HugeMethodLimit): a longer predict would stay interpreted
+    private static final int MAX_CODE_LENGTH = 8000;
+    //Each weight takes at least 7 bytes in predict: the input, the weight, the multiplication and the addition
+    private static final int MIN_WEIGHT_LENGTH = 7;
+
+    private static final AtomicInteger numberOfClasses = new AtomicInteger();
+
+    private NetworkCompiler() {}
+
+    /**
+     * Compiles a network. The evaluator keeps the weights the network has now: the modifications made after are not seen by the evaluator
+     *
+     * @param network the network
+     * @return the compiled evaluator of the network, or an evaluator using a copy of the layers of the network if it cannot be compiled
+     */
+    public static NetworkEvaluator compile(NeuralNetwork network) {
+        if(canCompile(network)) {
+            try {
+                String name = NetworkCompiler.class.getPackage().getName() + ".CompiledNetwork" + numberOfClasses.incrementAndGet();
+                byte[] bytecode = generate(name.replace('.', '/'), network);
+
+                //Each class has its own loader, so it is unloaded with its evaluator
+                Class<?> compiled = new GeneratedClassLoader().define(name, bytecode);
+                return (NetworkEvaluator) compiled.getConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                //The generated class is wrong, but the layers can still be used
+                System.err.println("THE NETWORK COULD NOT BE COMPILED, ITS LAYERS ARE USED INSTEAD");
+                e.printStackTrace();
+            }
+        }
+
+        NeuralNetwork copy = copy(network);
+        return (input, output) -> {
+            double[] prediction = copy.predict(input);
+            System.arraycopy(prediction, 0, output, 0, prediction.length);
+        };
+    }
+
+    /**
+     * @param network the network
+     * @return true if {@link #compile(NeuralNetwork)} generates a class for the network, false if it uses its layers
+     */
+    public static boolean canCompile(NeuralNetwork network) {
+        if(network.getLayers().isEmpty())
+            return false;
+
+        int weights = 0;
+        for (Layer layer : network.getLayers()) {
+            if(!(layer instanceof DenseLayer))
+                return false;
+
+            DenseLayer denseLayer = (DenseLayer) layer;
+            DoubleUnaryOperator activationFunction = denseLayer.getActivationFunction();
+            if(denseLayer.getPrecision() != Precision.DOUBLE || (activationFunction != MathUtils.TANH && activationFunction != MathUtils.LOGISTIC))
+                return false;
+
+            weights += denseLayer.getNumberOfWeights();
+        }
+
+        //The big networks are rejected without generating their code
+        if((long) weights * MIN_WEIGHT_LENGTH > MAX_CODE_LENGTH)
+            return false;
+
+        return generatePredict(new ClassFile(), network).length() <= MAX_CODE_LENGTH;
+    }
+
+    /**
+     * Copies the layers of a network, so the copy is not modified with the network. The layers that are not dense layers cannot be copied,
+     * so a network containing them is returned as is
+     *
+     * @param network the network
+     * @return a network with a copy of the weights of the network, or the network itself if its layers cannot be copied
+     */
+    private static NeuralNetwork copy(NeuralNetwork network) {
+        for (Layer layer : network.getLayers()) {
+            if(!(layer instanceof DenseLayer))
+                return network;
+        }
+
+        int[] topology = network.getTopology();
+        double[] genome = network.getAllWeights();
+        NeuralNetwork copy = new NeuralNetwork(topology[0]);
+
+        int offset = 0;
+        for (int l = 0; l < network.getLayers().size(); l++) {
+            DenseLayer layer = (DenseLayer) network.getLayers().get(l);
+            DenseLayer layerCopy = new DenseLayer(layer.size(), topology[l], genome, offset, layer.getActivationFunction());
+            if(layer.getPrecision() != Precision.DOUBLE)
+                layerCopy.setPrecision(layer.getPrecision());
+
+            copy.getLayers().add(layerCopy);
+            offset += layer.getNumberOfWeights();
+        }
+
+        return copy;
+    }
+
+    /**
+     * Generates the class of a network. It implements {@link NetworkEvaluator}, and computes each neuron like {@link DenseLayer}:
+     * the weighted sum starts at 0, adds the weights multiplied by the inputs in order, then the bias.
+     *
+     * @param name the internal name of the class
+     * @param network the network, that can be compiled
+     * @return the bytecode of the class
+     */
+    private static byte[] generate(String name, NeuralNetwork network) {
+        ClassFile classFile = new ClassFile();
+        int thisClass = classFile.classInfo(name);
+        int objectClass = classFile.classInfo("java/lang/Object");
+        int evaluatorInterface = classFile.classInfo(NetworkEvaluator.class.getName().replace('.', '/'));
+        int objectConstructor = classFile.methodInfo("java/lang/Object", "<init>", "()V");
+        Code predict = generatePredict(classFile, network);
+
+        //this, the inputs, the outputs, then two slots for each hidden neuron
+        int locals = 3;
+        for (int l = 0; l < network.getLayers().size() - 1; l++) {
+            locals += 2 * network.getLayers().get(l).size();
+        }
+
+        Code constructor = new Code();
+        constructor.op(Code.ALOAD_0);
+        constructor.op(Code.INVOKESPECIAL);
+        constructor.u2(objectConstructor);
+        constructor.op(Code.RETURN);
+
+        //The deepest stack is the outputs, the index, 1.0, the sum, an input and a weight
+        classFile.method("<init>", "()V", constructor, 1, 1);
+        classFile.method("predict", "([D[D)V", predict, 12, locals);
+        return classFile.toBytes(thisClass, objectClass, evaluatorInterface);
+    }
+
+    /**
+     * Generates the code of the predict method of a network, without any loop
+     *
+     * @param classFile the class file receiving the constants
+     * @param network the network, made of dense layers in DOUBLE using TANH or LOGISTIC
+     * @return the code of predict
+     */
+    private static Code generatePredict(ClassFile classFile, NeuralNetwork network) {
+        int tanh = classFile.methodInfo("java/lang/Math", "tanh", "(D)D");
+        int exp = classFile.methodInfo("java/lang/Math", "exp", "(D)D");
+
+        //Local variables of predict: 0 is this, 1 the inputs, 2 the outputs, then the output of each hidden neuron on two slots
+        Code predict = new Code();
+        ArrayList<Layer> layers = network.getLayers();
+        int[] topology = network.getTopology();
+        int[] previousLocals = null;
+        int nextLocal = 3;
+        for (int l = 0; l < layers.size(); l++) {
+            DenseLayer layer = (DenseLayer) layers.get(l);
+            boolean lastLayer = l == layers.size() - 1;
+            boolean logistic = layer.getActivationFunction() == MathUtils.LOGISTIC;
+            double[] weights = layer.getFlatWeights();
+            int weight = layer.getWeightOffset();
+            int inputSize = topology[l];
+
+            int[] locals = new int[layer.size()];
+            for (int neuron = 0; neuron < layer.size(); neuron++) {
+                if(lastLayer) {
+                    predict.op(Code.ALOAD_2);
+                    predict.pushInt(neuron);
+                }
+                //1.0/(1.0 + Math.exp(-x))
+                if(logistic)
+                    predict.op(Code.DCONST_1);
+
+                predict.op(Code.DCONST_0);
+                for (int i = 0; i < inputSize; i++) {
+                    if(previousLocals == null) {
+                        predict.op(Code.ALOAD_1);
+                        predict.pushInt(i);
+                        predict.op(Code.DALOAD);
+                    }
+                    else {
+                        predict.local(Code.DLOAD, previousLocals[i]);
+                    }
+                    predict.op(Code.LDC2_W);
+                    predict.u2(classFile.doubleInfo(weights[weight + i]));
+                    predict.op(Code.DMUL);
+                    predict.op(Code.DADD);
+                }
+
+                //BIAS
+                predict.op(Code.LDC2_W);
+                predict.u2(classFile.doubleInfo(weights[weight + inputSize]));
+                predict.op(Code.DADD);
+
+                if(logistic) {
+                    predict.op(Code.DNEG);
+                    predict.invokeStatic(exp);
+                    predict.op(Code.DCONST_1);
+                    predict.op(Code.DADD);
+                    predict.op(Code.DDIV);
+                }
+                else {
+                    predict.invokeStatic(tanh);
+                }
+
+                if(lastLayer) {
+                    predict.op(Code.DASTORE);
+                }
+                else {
+                    locals[neuron] = nextLocal;
+                    predict.local(Code.DSTORE, nextLocal);
+                    nextLocal += 2;
+                }
+                weight += inputSize + 1;
+            }
+            previousLocals = locals;
+        }
+        predict.op(Code.RETURN);
+
+        return predict;
+    }
+
+    /**
+     * Loader of one generated class
+     */
+    private static class GeneratedClassLoader extends ClassLoader {
+        GeneratedClassLoader() {
+            super(NetworkCompiler.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] bytecode) {
+            return defineClass(name, bytecode, 0, bytecode.length);
+        }
+    }
+
+    /**
+     * Bytecode of a method
+     */
+    private static class Code {
+        static final int ALOAD_0 = 0x2a, ALOAD_1 = 0x2b, ALOAD_2 = 0x2c;
+        static final int DCONST_0 = 0x0e, DCONST_1 = 0x0f, BIPUSH = 0x10, SIPUSH = 0x11, LDC2_W = 0x14;
+        static final int DLOAD = 0x18, DALOAD = 0x31, DSTORE = 0x39, DASTORE = 0x52;
+        static final int DADD = 0x63, DMUL = 0x6b, DDIV = 0x6f, DNEG = 0x77;
+        static final int RETURN = 0xb1, INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8, WIDE = 0xc4;
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        void op(int opcode) {
+            bytes.write(opcode);
+        }
+
+        void u2(int value) {
+            bytes.write(value >>> 8);
+            bytes.write(value);
+        }
+
+        void pushInt(int value) {
+            if(value <= 5)
+                op(0x03 + value);
+            else if(value <= Byte.MAX_VALUE) {
+                op(BIPUSH);
+                op(value);
+            }
+            else {
+                op(SIPUSH);
+                u2(value);
+            }
+        }
+
+        void local(int opcode, int index) {
+            if(index <= 0xff) {
+                op(opcode);
+                op(index);
+            }
+            else {
+                op(WIDE);
+                op(opcode);
+                u2(index);
+            }
+        }
+
+        void invokeStatic(int method) {
+            op(INVOKESTATIC);
+            u2(method);
+        }
+
+        int length() {
+            return bytes.size();
+        }
+
+        byte[] toBytes() {
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     * Constant pool and methods of a class file, written for Java 8. The methods have no branch, so they do not need any stack map
+     */
+    private static class ClassFile {
+        private static final int MAGIC = 0xCAFEBABE;
+        private static final int VERSION = 52;
+        private static final int ACC_PUBLIC = 0x0001, ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+
+        private final ByteArrayOutputStream constants = new ByteArrayOutputStream();
+        private final DataOutputStream constantPool = new DataOutputStream(constants);
+        private final HashMap<Object, Integer> indexes = new HashMap<>();
+        private int constantPoolCount = 1;
+
+        private final ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+        private final DataOutputStream methods = new DataOutputStream(methodBytes);
+        private int methodCount = 0;
+
+        int utf8(String value) {
+            return constant("utf8 " + value, 1, out -> {
+                out.writeByte(1);
+                out.writeUTF(value);
+            });
+        }
+
+        int classInfo(String internalName) {
+            int name = utf8(internalName);
+            return constant("class " + internalName, 1, out -> {
+                out.writeByte(7);
+                out.writeShort(name);
+            });
+        }
+
+        int doubleInfo(double value) {
+            //The raw bits keep -0.0 apart from 0.0
+            long bits = Double.doubleToRawLongBits(value);
+            return constant(bits, 2, out -> {
+                out.writeByte(6);
+                out.writeLong(bits);
+            });
+        }
+
+        int methodInfo(String owner, String name, String descriptor) {
+            int ownerClass = classInfo(owner);
+            int nameIndex = utf8(name), descriptorIndex = utf8(descriptor);
+            int nameAndType = constant("nameAndType " + name + descriptor, 1, out -> {
+                out.writeByte(12);
+                out.writeShort(nameIndex);
+                out.writeShort(descriptorIndex);
+            });
+            return constant("method " + owner + "." + name + descriptor, 1, out -> {
+                out.writeByte(10);
+                out.writeShort(ownerClass);
+                out.writeShort(nameAndType);
+            });
+        }
+
+        void method(String name, String descriptor, Code code, int maxStack, int maxLocals) {
+            if(code.length() > 0xffff || maxLocals > 0xffff)
+                throw new ClassFormatError("The method " + name + " is too big");
+
+            int nameIndex = utf8(name), descriptorIndex = utf8(descriptor), codeAttribute = utf8("Code");
+            write(methods, out -> {
+                out.writeShort(ACC_PUBLIC);
+                out.writeShort(nameIndex);
+                out.writeShort(descriptorIndex);
+                out.writeShort(1);
+
+                out.writeShort(codeAttribute);
+                out.writeInt(12 + code.length());
+                out.writeShort(maxStack);
+                out.writeShort(maxLocals);
+                out.writeInt(code.length());
+                out.write(code.toBytes());
+                //No exception table and no attribute
+                out.writeShort(0);
+                out.writeShort(0);
+            });
+            methodCount++;
+        }
+
+        byte[] toBytes(int thisClass, int superClass, int interfaceClass) {
+            if(constantPoolCount > 0xffff)
+                throw new ClassFormatError("Too many constants");
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            write(new DataOutputStream(bytes), out -> {
+                out.writeInt(MAGIC);
+                out.writeShort(0);
+                out.writeShort(VERSION);
+                out.writeShort(constantPoolCount);
+                constants.writeTo(out);
+
+                out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+                out.writeShort(thisClass);
+                out.writeShort(superClass);
+                out.writeShort(1);
+                out.writeShort(interfaceClass);
+                //No field
+                out.writeShort(0);
+                out.writeShort(methodCount);
+                methodBytes.writeTo(out);
+                //No attribute
+                out.writeShort(0);
+            });
+
+            return bytes.toByteArray();
+        }
+
+        /**
+         * Adds a constant to the pool, unless it is already there
+         *
+         * @param key identifies the constant
+         * @param slots the number of entries used by the constant in the pool
+         * @param writer writes the constant
+         * @return the index of the constant
+         */
+        private int constant(Object key, int slots, Output writer) {
+            Integer index = indexes.get(key);
+            if(index == null) {
+                index = constantPoolCount;
+                write(constantPool, writer);
+                indexes.put(key, index);
+                constantPoolCount += slots;
+            }
+
+            return index;
+        }
+
+        private static void write(DataOutputStream out, Output writer) {
+            try {
+                writer.write(out);
+            } catch (IOException e) {
+                throw new RuntimeException("The class could not be written", e);
+            }
+        }
+
+        private interface Output {
+            void write(DataOutputStream out) throws IOException;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package org.lrima.laop.network.nn;
+
+/**
+ * Predicts with a neural network whose weights do not change anymore, like one made by {@link NetworkCompiler}.
+ *
+ * @author Léonard
+ */
+public interface NetworkEvaluator {
+    /**
+     * Predicts the outputs of the network. Can be called from many threads at the same time
+     *
+     * @param input the inputs, of the size of the inputs of the network
+     * @param output the array receiving the prediction, at least of the size of the last layer
+     */
+    void predict(double[] input, double[] output);
+}
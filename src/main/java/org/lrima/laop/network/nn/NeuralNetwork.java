@@ -5,7 +5,7 @@ import org.lrima.laop.utils.NeuralNetworkUtils;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.function.Function;
+import java.util.function.DoubleUnaryOperator;
 
 /**
  * Creates a neural network containing a certain number of layers.
@@ -15,6 +15,11 @@ import java.util.function.Function;
 public class NeuralNetwork {
     ArrayList<Layer> layers;
     int inputSize;
+    //Outputs of the layers before the last one, reused by predict(double[], double[])
+    private double[][] layerOutputs;
+    private Precision precision = Precision.DOUBLE;
+    //The weights of all the dense layers, layer by layer. The layers use it directly
+    private double[] genome;
 
     /**
      * Created the neural network with no layers.
@@ -26,17 +31,28 @@ public class NeuralNetwork {
         layers = new ArrayList<>();
     }
 
+    /**
+     * Created the neural network with dense layers using a genome. The genome is not copied: modifying it modifies the network
+     *
+     * @param topology the size of the inputs then the size of each layer
+     * @param weights the genome, containing the weights of all the layers in the order of {@link #getAllWeights()}
+     */
     public NeuralNetwork(int[] topology, double[] weights){
         this.inputSize = topology[0];
 
         this.layers = new ArrayList<>();
-
-        double[][][] allweghts = NeuralNetworkUtils.remap(topology, weights);
-
-        for (int i = 0; i < allweghts.length; i++) {
-            double[][] allweght = allweghts[i];
-            this.layers.add(new DenseLayer(allweght, MathUtils.TANH));
+        this.genome = weights;
+
+        //Each layer uses its part of the genome, in the same order as getAllWeights
+        int offset = 0;
+        for (int i = 0; i < topology.length - 1; i++) {
+            DenseLayer layer = new DenseLayer(topology[i + 1], topology[i], weights, offset, MathUtils.TANH);
+            this.layers.add(layer);
+            offset += layer.getNumberOfWeights();
         }
+
+        if(offset != weights.length)
+            throw new IllegalArgumentException("The topology needs " + offset + " weights, not " + weights.length);
     }
 
     /**
@@ -54,6 +70,30 @@ public class NeuralNetwork {
         return tempData;
     }
 
+    /**
+     * Predicts a certain value for that input without allocating memory: the outputs of the layers are kept between the calls.
+     * Because of that, a network must not predict with this method from many threads at the same time.
+     *
+     * @param input the inputs (an array that contains a value for each node input)
+     * @param output the array receiving the prediction, at least of the size of the last layer
+     */
+    public void predict(double[] input, double[] output){
+        if(layerOutputs == null || layerOutputs.length != layers.size() - 1){
+            layerOutputs = new double[layers.size() - 1][];
+            for (int i = 0; i < layerOutputs.length; i++) {
+                layerOutputs[i] = new double[layers.get(i).size()];
+            }
+        }
+
+        double[] tempData = input;
+        for (int i = 0; i < layers.size() - 1; i++) {
+            layers.get(i).feedFoward(tempData, layerOutputs[i]);
+            tempData = layerOutputs[i];
+        }
+
+        getLastLayer().feedFoward(tempData, output);
+    }
+
     /**
      *
      * @return all the layers
@@ -68,35 +108,113 @@ public class NeuralNetwork {
      * @param size the size of the current layer.
      * @param activationFunction the activation function of this layer
      */
-    public void addDenseLayer(int size, Function<Double, Double> activationFunction){
+    public void addDenseLayer(int size, DoubleUnaryOperator activationFunction){
         if(inputSize == 0)
             System.err.print("INPUT SIZE NOT SET");
+        DenseLayer layer;
         if(layers.size() == 0){
-            layers.add(new DenseLayer(size, inputSize, activationFunction));
+            layer = new DenseLayer(size, inputSize, activationFunction);
         }
         else{
-            layers.add(new DenseLayer(size, getLastLayer().size(), activationFunction));
+            layer = new DenseLayer(size, getLastLayer().size(), activationFunction);
         }
+
+        if(precision != Precision.DOUBLE)
+            layer.setPrecision(precision);
+        layers.add(layer);
     }
 
     /**
-     * Returns all the weights of the network
+     * Sets the precision of the weights of all the dense layers used to predict. The weights are still kept in double,
+     * so the network can be copied and crossed over without losing precision
      *
+     * @param precision the precision
      */
-    public double[] getAllWeights(){
-        double[][][] weights = new double[this.layers.size()][][];
+    public void setPrecision(Precision precision) {
+        this.precision = precision;
+        for (Layer layer : layers) {
+            if(layer instanceof DenseLayer)
+                ((DenseLayer) layer).setPrecision(precision);
+        }
+    }
 
-        for (int i = 0; i < layers.size(); i++) {
-            if(! (layers.get(i) instanceof DenseLayer)){
+    /**
+     * @return the precision of the weights used to predict
+     */
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Returns all the weights of the network, layer by layer
+     *
+     */
+    public double[] getAllWeights(){
+        int length = 0;
+        for (Layer layer : layers) {
+            if(! (layer instanceof DenseLayer)){
                 System.err.println("TO USE THE GETALLWEIGHTS FUNCTION OF THE NEURAL NETWORK, ALL THE LAYERS MUST ME DENSE LAYERS");
                 return null;
             }
-            DenseLayer denseLayer = (DenseLayer) layers.get(i);
+            length += ((DenseLayer) layer).getNumberOfWeights();
+        }
+
+        double[] weights = new double[length];
+        int offset = 0;
+        for (Layer layer : layers) {
+            DenseLayer denseLayer = (DenseLayer) layer;
+            System.arraycopy(denseLayer.getFlatWeights(), denseLayer.getWeightOffset(), weights, offset, denseLayer.getNumberOfWeights());
+            offset += denseLayer.getNumberOfWeights();
+        }
+
+        return weights;
+    }
+
+    /**
+     * Returns the genome of the network: the array containing the weights of all the layers, in the order of {@link #getAllWeights()}.
+     * It is not a copy, the layers use it: modifying it modifies the network, and it can be written without allocating anything.
+     * If the layers were added separately, their weights are first moved in one genome. <br/>
+     * If the precision is not DOUBLE, it must be set again after modifying the genome.
+     *
+     * @return the genome, or null if the layers are not all dense layers
+     */
+    public double[] getGenome(){
+        if(!usesGenome()){
+            double[] weights = getAllWeights();
+            if(weights == null)
+                return null;
+
+            int offset = 0;
+            for (Layer layer : layers) {
+                DenseLayer denseLayer = (DenseLayer) layer;
+                denseLayer.setFlatWeights(weights, offset);
+                offset += denseLayer.getNumberOfWeights();
+            }
+            genome = weights;
+        }
+
+        return genome;
+    }
+
+    /**
+     * @return true if all the layers are dense layers using their part of the genome
+     */
+    private boolean usesGenome(){
+        if(genome == null)
+            return false;
+
+        int offset = 0;
+        for (Layer layer : layers) {
+            if(!(layer instanceof DenseLayer))
+                return false;
 
-            weights[i] = denseLayer.getWeights();
+            DenseLayer denseLayer = (DenseLayer) layer;
+            if(denseLayer.getFlatWeights() != genome || denseLayer.getWeightOffset() != offset)
+                return false;
+            offset += denseLayer.getNumberOfWeights();
         }
 
-        return NeuralNetworkUtils.flatArray(weights);
+        return offset == genome.length;
     }
 
     public int[] getTopology() {
@@ -150,7 +268,7 @@ public class NeuralNetwork {
 
             sum += weights[i][inputs.length];
 
-            prediction[i] = MathUtils.LOGISTIC.apply(sum);
+            prediction[i] = MathUtils.LOGISTIC.applyAsDouble(sum);
         }
 
         double[][][] expected = new double[1][][];
@@ -0,0 +1,179 @@
+package org.lrima.laop.network.nn;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Neural networks of a whole population that have the same topology, evaluated together.
+ * The weights of all the networks are packed in one array, layer by layer: the weights of a layer for all the networks follow each other,
+ * so a layer of the population is computed in one pass over a contiguous part of the array. <br/>
+ * The inputs and the outputs of the networks are packed the same way as the observations and the actions of a
+ * {@link org.lrima.laop.simulation.BatchEnvironnement}, so they can be given directly. The predictions are the same as
+ * {@link NeuralNetwork#predict(double[])} with the same weights and {@link Precision}. <br/>
+ * With a reduced precision, only the reduced weights are kept.
+ *
+ * @author Léonard
+ */
+public class PopulationNetwork {
+    private final int[] topology;
+    private final int populationSize;
+    private final DoubleUnaryOperator activationFunction;
+    private final Precision precision;
+
+    //The weights of layer l of network g are at layerStart[l] + g * layerLength[l], row by row like in a DenseLayer. Only the array of the precision is used
+    private double[] weights;
+    private float[] floatWeights;
+    private final int[] layerStart;
+    private final int[] layerLength;
+
+    //In INT8, the quantized weights of layer l of network g are at quantizedStart[l] + g * (layerLength[l] - the size of the layer),
+    //and the scales and the biases of its neurons at rowStart[l] + g * the size of the layer
+    private byte[] quantizedWeights;
+    private float[] scales, biases;
+    private final int[] quantizedStart;
+    private final int[] rowStart;
+
+    //Outputs of the layers before the last one for all the networks
+    private final double[][] layerOutputs;
+
+    /**
+     * Creates the networks of a population. All the weights are 0 until they are set
+     *
+     * @param topology the number of inputs then the size of each layer
+     * @param populationSize the number of networks
+     * @param activationFunction the activation function of all the layers
+     */
+    public PopulationNetwork(int[] topology, int populationSize, DoubleUnaryOperator activationFunction) {
+        this(topology, populationSize, activationFunction, Precision.DOUBLE);
+    }
+
+    /**
+     * Creates the networks of a population. All the weights are 0 until they are set
+     *
+     * @param topology the number of inputs then the size of each layer
+     * @param populationSize the number of networks
+     * @param activationFunction the activation function of all the layers
+     * @param precision the precision of the weights used to predict
+     */
+    public PopulationNetwork(int[] topology, int populationSize, DoubleUnaryOperator activationFunction, Precision precision) {
+        this.topology = topology;
+        this.populationSize = populationSize;
+        this.activationFunction = activationFunction;
+        this.precision = precision;
+
+        int layers = topology.length - 1;
+        this.layerStart = new int[layers];
+        this.layerLength = new int[layers];
+        this.quantizedStart = new int[layers];
+        this.rowStart = new int[layers];
+        int length = 0, quantized = 0, rows = 0;
+        for (int i = 0; i < layers; i++) {
+            layerStart[i] = length;
+            layerLength[i] = topology[i + 1] * (topology[i] + 1);
+            length += populationSize * layerLength[i];
+
+            quantizedStart[i] = quantized;
+            quantized += populationSize * topology[i + 1] * topology[i];
+            rowStart[i] = rows;
+            rows += populationSize * topology[i + 1];
+        }
+
+        if(precision == Precision.DOUBLE) {
+            this.weights = new double[length];
+        }
+        else if(precision == Precision.FLOAT) {
+            this.floatWeights = new float[length];
+        }
+        else {
+            this.quantizedWeights = new byte[quantized];
+            this.scales = new float[rows];
+            this.biases = new float[rows];
+        }
+
+        this.layerOutputs = new double[layers - 1][];
+        for (int i = 0; i < layerOutputs.length; i++) {
+            layerOutputs[i] = new double[populationSize * topology[i + 1]];
+        }
+    }
+
+    /**
+     * Sets the weights of a network of the population
+     *
+     * @param network the index of the network
+     * @param networkWeights the weights of the network, in the order of {@link NeuralNetwork#getAllWeights()}
+     */
+    public void setWeights(int network, double[] networkWeights) {
+        int offset = 0;
+        for (int i = 0; i < layerStart.length; i++) {
+            int at = layerStart[i] + network * layerLength[i];
+            int size = topology[i + 1];
+
+            if(precision == Precision.DOUBLE)
+                System.arraycopy(networkWeights, offset, weights, at, layerLength[i]);
+            else if(precision == Precision.FLOAT)
+                LayerKernels.round(networkWeights, offset, floatWeights, at, layerLength[i]);
+            else
+                LayerKernels.quantize(networkWeights, offset, topology[i], size, quantizedWeights, quantizedStart[i] + network * size * topology[i], scales, biases, rowStart[i] + network * size);
+
+            offset += layerLength[i];
+        }
+    }
+
+    /**
+     * Predicts the outputs of all the networks. Nothing is allocated, so this must not be called from many threads at the same time
+     *
+     * @param inputs the inputs of all the networks: the inputs of network g start at <code>g * topology[0]</code>
+     * @param outputs receives the outputs of all the networks: the outputs of network g start at <code>g * </code> the size of the last layer
+     */
+    public void predict(double[] inputs, double[] outputs) {
+        double[] data = inputs;
+        for (int i = 0; i < layerOutputs.length; i++) {
+            feedFoward(i, data, layerOutputs[i]);
+            data = layerOutputs[i];
+        }
+
+        feedFoward(layerStart.length - 1, data, outputs);
+    }
+
+    /**
+     * Computes a layer for all the networks, with the weighted sum of each neuron like {@link DenseLayer}
+     *
+     * @param layer the index of the layer
+     * @param data the inputs of the layer for all the networks
+     * @param output receives the outputs of the layer for all the networks
+     */
+    private void feedFoward(int layer, double[] data, double[] output) {
+        int inputSize = topology[layer];
+        int size = topology[layer + 1];
+
+        //The weights of the networks follow each other, so the layer of the whole population is read in one pass
+        for (int g = 0; g < populationSize; g++) {
+            if(precision == Precision.DOUBLE)
+                LayerKernels.dense(weights, layerStart[layer] + g * layerLength[layer], inputSize, size, data, g * inputSize, output, g * size, activationFunction);
+            else if(precision == Precision.FLOAT)
+                LayerKernels.dense(floatWeights, layerStart[layer] + g * layerLength[layer], inputSize, size, data, g * inputSize, output, g * size, activationFunction);
+            else
+                LayerKernels.dense(quantizedWeights, quantizedStart[layer] + g * size * inputSize, scales, biases, rowStart[layer] + g * size, inputSize, size, data, g * inputSize, output, g * size, activationFunction);
+        }
+    }
+
+    /**
+     * @return the number of networks
+     */
+    public int getPopulationSize() {
+        return populationSize;
+    }
+
+    /**
+     * @return the precision of the weights used to predict
+     */
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    /**
+     * @return the number of inputs then the size of each layer
+     */
+    public int[] getTopology() {
+        return topology;
+    }
+}
@@ -0,0 +1,19 @@
+package org.lrima.laop.network.nn;
+
+/**
+ * Precision of the weights used to predict with a neural network. The weights are always kept in double to be trained and copied:
+ * the reduced weights are computed from them when the precision is chosen. A smaller precision reads less memory for each prediction.
+ *
+ * @author Léonard
+ */
+public enum Precision {
+    /** The weights are used as they are */
+    DOUBLE,
+    /** The weights are rounded to floats, half the memory of DOUBLE */
+    FLOAT,
+    /**
+     * The weights of each neuron are quantized on a byte with a scale: the largest weight of the neuron is 127 or -127.
+     * The bias and the scale stay floats. About a quarter of the memory of FLOAT
+     */
+    INT8
+}
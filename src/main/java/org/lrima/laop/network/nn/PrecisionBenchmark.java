@@ -0,0 +1,108 @@
+package org.lrima.laop.network.nn;
+
+import org.lrima.laop.utils.MathUtils;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Measures the time and the accuracy of each {@link Precision} on a population of networks like the ones of the genetic learning.
+ * The outputs of each precision are compared to the outputs in DOUBLE for the same random inputs.
+ *
+ * @author Léonard
+ */
+public class PrecisionBenchmark {
+    private static final int[] TOPOLOGY = {5, 5, 8, 2};
+
+    /**
+     * Runs the benchmark
+     *
+     * @param args the number of networks then the number of predictions, 100 and 20000 by default
+     */
+    public static void main(String[] args){
+        int populationSize = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int predictions = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        Random random = new Random(0);
+
+        NeuralNetwork[] networks = new NeuralNetwork[populationSize];
+        for (int i = 0; i < populationSize; i++) {
+            networks[i] = new NeuralNetwork(TOPOLOGY[0]);
+            for (int j = 1; j < TOPOLOGY.length; j++) {
+                networks[i].addDenseLayer(TOPOLOGY[j], MathUtils.TANH);
+            }
+        }
+
+        //The sensors give values between 0 and 1
+        double[][] inputs = new double[64][populationSize * TOPOLOGY[0]];
+        for (double[] input : inputs) {
+            for (int i = 0; i < input.length; i++) {
+                input[i] = random.nextDouble();
+            }
+        }
+
+        int outputSize = TOPOLOGY[TOPOLOGY.length - 1];
+        double[][] expected = predictAll(population(networks, Precision.DOUBLE), inputs, outputSize);
+
+        System.out.printf("%d networks %s, %d predictions%n", populationSize, Arrays.toString(TOPOLOGY), predictions);
+        for (Precision precision : Precision.values()) {
+            PopulationNetwork population = population(networks, precision);
+
+            double[][] outputs = predictAll(population, inputs, outputSize);
+            double maxError = 0, sumError = 0;
+            for (int i = 0; i < outputs.length; i++) {
+                for (int j = 0; j < outputs[i].length; j++) {
+                    double error = Math.abs(outputs[i][j] - expected[i][j]);
+                    maxError = Math.max(maxError, error);
+                    sumError += error;
+                }
+            }
+            double meanError = sumError / (outputs.length * outputs[0].length);
+
+            double[] output = new double[populationSize * outputSize];
+            //Warm up before measuring
+            for (int i = 0; i < predictions / 4; i++) {
+                population.predict(inputs[i % inputs.length], output);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < predictions; i++) {
+                population.predict(inputs[i % inputs.length], output);
+            }
+            double nanosPerNetwork = (double) (System.nanoTime() - start) / predictions / populationSize;
+
+            System.out.printf("%-6s %8.1f ns/network   max error %.3e   mean error %.3e%n", precision, nanosPerNetwork, maxError, meanError);
+        }
+    }
+
+    /**
+     * Creates the population network of the networks in a precision
+     *
+     * @param networks the networks
+     * @param precision the precision
+     * @return the population network
+     */
+    private static PopulationNetwork population(NeuralNetwork[] networks, Precision precision) {
+        PopulationNetwork population = new PopulationNetwork(TOPOLOGY, networks.length, MathUtils.TANH, precision);
+        for (int i = 0; i < networks.length; i++) {
+            population.setWeights(i, networks[i].getAllWeights());
+        }
+
+        return population;
+    }
+
+    /**
+     * Predicts the outputs of the population for each of the inputs
+     *
+     * @param population the population network
+     * @param inputs the inputs of all the networks, for each prediction
+     * @param outputSize the number of outputs of a network
+     * @return the outputs of all the networks, for each prediction
+     */
+    private static double[][] predictAll(PopulationNetwork population, double[][] inputs, int outputSize) {
+        double[][] outputs = new double[inputs.length][population.getPopulationSize() * outputSize];
+        for (int i = 0; i < inputs.length; i++) {
+            population.predict(inputs[i], outputs[i]);
+        }
+
+        return outputs;
+    }
+}
@@ -1,5 +1,7 @@
 package org.lrima.laop.physic;
 
+import org.lrima.laop.simulation.BatchEnvironnement;
+
 /**
  * Used to transfer the array of data retrieved from an algorithm
  * to an object
@@ -49,6 +51,16 @@ public class CarControls {
 		return this.rotationField;
 	}
 
+	/**
+	 * Writes these controls in an array of actions, as used by a {@link BatchEnvironnement}
+	 * @param actions the array of actions
+	 * @param agent the index of the agent these controls are for
+	 */
+	public void writeTo(double[] actions, int agent) {
+		actions[agent * BatchEnvironnement.ACTION_SIZE] = this.getAcceleration();
+		actions[agent * BatchEnvironnement.ACTION_SIZE + 1] = this.getRotation();
+	}
+
 	@Override
 	public String toString() {
 		return String.format("[%.2f, %.2f]", accelerationField, rotationField);
@@ -0,0 +1,173 @@
+package org.lrima.laop.physic;
+
+import org.lrima.laop.simulation.LearningEngine;
+import org.lrima.laop.utils.PhysicUtils;
+
+/**
+ * Physical state of a population of cars. Each value is kept in its own array indexed by the car so that
+ * the physic of the whole population is computed in tight loops over contiguous memory.
+ * The {@link SimpleCar} objects are views on one index of the pool.
+ *
+ * @author Léonard
+ */
+public class CarPool {
+    /**
+     * Number of values in the forces array for each car : the x and y of the accel, break, air resistance and direction resistance
+     */
+    static final int FORCES_SIZE = 8;
+
+    static final double RANGE = 0.04;
+    static final double CAR_MASS = 2000;
+
+    private final int size;
+
+    final double[] positionX, positionY;
+    final double[] velocityX, velocityY;
+    final double[] accelerationX, accelerationY;
+    final double[] rotation;
+    final double[] angularVelocity;
+    final double[] wheelDirection;
+    final double[] distanceTraveled;
+    final boolean[] dead;
+
+    //Forces of the last step, FORCES_SIZE values per car
+    final double[] forces;
+    final boolean[] forcesApplied;
+
+    /**
+     * Creates a pool of <code>size</code> cars at the origin
+     *
+     * @param size the number of cars
+     */
+    public CarPool(int size) {
+        this.size = size;
+
+        this.positionX = new double[size];
+        this.positionY = new double[size];
+        this.velocityX = new double[size];
+        this.velocityY = new double[size];
+        this.accelerationX = new double[size];
+        this.accelerationY = new double[size];
+        this.rotation = new double[size];
+        this.angularVelocity = new double[size];
+        this.wheelDirection = new double[size];
+        this.distanceTraveled = new double[size];
+        this.dead = new boolean[size];
+
+        this.forces = new double[size * FORCES_SIZE];
+        this.forcesApplied = new boolean[size];
+    }
+
+    /**
+     * Moves the cars between index <code>from</code> (inclusive) and <code>to</code> (exclusive).
+     * The actions contain the acceleration and the rotation of the steering wheel of each car, one after the other.
+     *
+     * @param actions the actions of all the cars
+     * @param from the index of the first car to step
+     * @param to the index after the last car to step
+     */
+    public void step(double[] actions, int from, int to) {
+        for (int i = from; i < to; i++) {
+            nextStep(i, actions[i * 2], actions[i * 2 + 1]);
+        }
+    }
+
+    /**
+     * Makes a step in the simulation for one car
+     *
+     * @param car the index of the car
+     * @param accelerationControl the acceleration of the car for that step
+     * @param rotationControl the rotation of the steering wheel for that step
+     */
+    public void nextStep(int car, double accelerationControl, double rotationControl) {
+        if(dead[car]) return;
+
+        //Same as CarControls#getAcceleration
+        if(Math.abs(accelerationControl) < 0.0001){
+            accelerationControl = 0;
+        }
+
+        double breakControl = Math.abs(Math.min(accelerationControl, 0));
+        double accelControl = Math.max(accelerationControl, 0);
+
+        double vx = velocityX[car];
+        double vy = velocityY[car];
+
+        //The forces are computed on primitives so that no vector is created at each step.
+        //They give the same results as the methods of PhysicUtils
+        double sin = Math.sin(rotation[car]);
+        double cos = Math.cos(rotation[car]);
+
+        //Accel from back : PhysicUtils#accelFromBackWeels
+        double thrust = PhysicUtils.BACK_WHEELS_FORCE * accelControl;
+        double accelForceX = -(thrust * sin);
+        double accelForceY = thrust * cos;
+
+        //Break force : PhysicUtils#breakForce
+        double breakFactor = breakControl * PhysicUtils.BREAK_FORCE;
+        double breakForceX = -(vx * breakFactor);
+        double breakForceY = -(vy * breakFactor);
+
+        //Air resistance : PhysicUtils#airResistance
+        double airResistanceX = vx * vx * PhysicUtils.AIR_RESISTANCE * -Math.signum(vx);
+        double airResistanceY = vy * vy * PhysicUtils.AIR_RESISTANCE * -Math.signum(vy);
+
+        //Directionnal resistance : PhysicUtils#directionResistance with the direction (-sin, cos)
+        double dot = vx * -sin + vy * cos;
+        double directionResistanceX = (vx - -sin * dot) * -PhysicUtils.DIRECTION_RESISTANCE;
+        double directionResistanceY = (vy - cos * dot) * -PhysicUtils.DIRECTION_RESISTANCE;
+
+        int offset = car * FORCES_SIZE;
+        forces[offset] = accelForceX;
+        forces[offset + 1] = accelForceY;
+        forces[offset + 2] = breakForceX;
+        forces[offset + 3] = breakForceY;
+        forces[offset + 4] = airResistanceX;
+        forces[offset + 5] = airResistanceY;
+        forces[offset + 6] = directionResistanceX;
+        forces[offset + 7] = directionResistanceY;
+        forcesApplied[car] = true;
+
+        //PhysicUtils#accelFromForces
+        double ax = (accelForceX + breakForceX + airResistanceX + directionResistanceX) * (1.0 / CAR_MASS);
+        double ay = (accelForceY + breakForceY + airResistanceY + directionResistanceY) * (1.0 / CAR_MASS);
+        accelerationX[car] = ax;
+        accelerationY[car] = ay;
+
+        wheelDirection[car] = rotationControl * RANGE;
+
+        angularVelocity[car] = Math.sqrt(vx * vx + vy * vy) * wheelDirection[car] * LearningEngine.DELTA_T;
+        rotation[car] += angularVelocity[car];
+
+        vx += ax * LearningEngine.DELTA_T;
+        vy += ay * LearningEngine.DELTA_T;
+        velocityX[car] = vx;
+        velocityY[car] = vy;
+
+        distanceTraveled[car] += Math.sqrt(vx * vx + vy * vy);
+
+        positionX[car] += vx * LearningEngine.DELTA_T;
+        positionY[car] += vy * LearningEngine.DELTA_T;
+    }
+
+    /**
+     * Places a car at a position with a rotation
+     *
+     * @param car the index of the car
+     * @param x the x position of the car
+     * @param y the y position of the car
+     * @param rotation the rotation of the car
+     */
+    public void place(int car, double x, double y, double rotation) {
+        this.positionX[car] = x;
+        this.positionY[car] = y;
+        this.rotation[car] = rotation;
+    }
+
+    /**
+     * @return the number of cars in the pool
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -6,12 +6,10 @@ import java.util.function.BiConsumer;
 
 import org.lrima.laop.physic.staticobjects.FitnessWallObject;
 import org.lrima.laop.physic.staticobjects.StaticLineObject;
-import org.lrima.laop.simulation.LearningEngine;
 import org.lrima.laop.simulation.map.LineCollidable;
 import org.lrima.laop.simulation.sensors.Sensor;
 import org.lrima.laop.simulation.sensors.SensorData;
 import org.lrima.laop.utils.MathUtils;
-import org.lrima.laop.utils.PhysicUtils;
 import org.lrima.laop.utils.math.Vector2d;
 
 /**
@@ -20,62 +18,55 @@ import org.lrima.laop.utils.math.Vector2d;
  * @author Léonard
  */
 public class SimpleCar implements LineCollidable {
-    double wheelDirection;
-    final double RANGE = 0.04;
     private ArrayList<Sensor> sensors;
     
     private final double CAR_WIDTH = 12;
     private final double CAR_HEIGHT = 37;
-    private final double CAR_MASS = 2000;
-    private boolean dead;
-    
-    private Vector2d position;
-    private Vector2d velocity;
-    private Vector2d acceleration;
-    private double rotation;
-    private double angularVelocity;
-    private ArrayList<Vector2d> forces;
 
-    private double distanceTraveled;
+    //The physical state of the car is kept in the pool
+    private final CarPool pool;
+    private final int index;
 
     private int fitnessWallCount;
     private int maxStep;
 
     private BiConsumer<Integer, SimpleCar> wallCountFunction;
-    ArrayList<FitnessWallObject> currentTouching = new ArrayList<>();
+    private WallCrossings wallCrossings;
+    private WallCrossings cellVisits;
+    //Number of times the car was baked, used as the step of the collisions
+    private int collisionStep = -1;
 
-    //OPTIMISATION
-    private ArrayList<LineCollidable> collidableSensors;
+    //Bounds of the body of the car, computed in bake()
     private float x1, x2, y1, y2;
+    //Corners of the car computed in bake() for the collisions of the step
+    private float topLeftX, topLeftY, topRightX, topRightY, bottomRightX, bottomRightY, bottomLeftX, bottomLeftY;
 
     /**
-     * Creates a new car with position <code>position</code>
+     * Creates a view on the car at index <code>index</code> of the pool
      *
-     * @param position the position of the car
+     * @param pool the pool containing the state of the car
+     * @param index the index of the car in the pool
      */
-    private SimpleCar(Vector2d position) {
-        this.position = position;
-        this.forces = new ArrayList<>();
+    public SimpleCar(CarPool pool, int index) {
+        this.pool = pool;
+        this.index = index;
         this.sensors = new ArrayList<>();
-        this.collidableSensors = new ArrayList<>();
-        
-        this.wheelDirection = 0;
-        this.velocity = Vector2d.origin;
-        this.acceleration = Vector2d.origin;
-        this.rotation = 0;
+        this.wallCrossings = new WallCrossings();
+        this.cellVisits = new WallCrossings();
+
         this.fitnessWallCount = 0;
         this.maxStep = 0;
     }
 
     /**
-     * Creates a new car with position <code>position</code> and rotation <code>rotation</code>
+     * Creates a new car with position <code>position</code> and rotation <code>rotation</code>. The car has its own pool.
      *
      * @param position
      * @param rotation
      */
     public SimpleCar(Vector2d position, double rotation){
-        this(position);
-        this.rotation = rotation;
+        this(new CarPool(1), 0);
+        this.pool.place(0, position.getX(), position.getY(), rotation);
     }
 
 
@@ -85,39 +76,17 @@ public class SimpleCar implements LineCollidable {
      * @param carControls the car control for that step
      */
     public void nextStep(CarControls carControls) {
-        if(this.dead) return;
-        
-        this.forces = new ArrayList<>();
-
-
-        double breakForce = Math.abs(Math.min(carControls.getAcceleration(), 0));
-        double accelForce = Math.max(carControls.getAcceleration(), 0);
-
-        this.forces.add(PhysicUtils.accelFromBackWeels(accelForce, rotation));
-        this.forces.get(0).setTag("Accel from back");
-        
-        this.forces.add(PhysicUtils.breakForce(this.velocity, breakForce));
-        this.forces.get(1).setTag("Break force");
-        this.forces.add(PhysicUtils.airResistance(this.velocity));
-        this.forces.get(2).setTag("Air resistance");
-        this.forces.add(PhysicUtils.directionResistance(this.getDirection(), this.velocity));
-        this.forces.get(3).setTag("Directionnal resistance");
-
-        
-        this.acceleration = PhysicUtils.accelFromForces(forces, this.CAR_MASS);
-
-        this.wheelDirection = carControls.getRotation() * RANGE;
-
-//        this.angularAccel = PhysicUtils.angularAccel(this.wheelDirection, this.velocity);
-//        this.angularAccel = Math.min(Math.max(RANGE, angularAccel), -RANGE);
-        this.angularVelocity = this.velocity.modulus()*this.wheelDirection* LearningEngine.DELTA_T;
-        this.rotation += angularVelocity;
-
-        this.velocity = this.velocity.add(acceleration.multiply(LearningEngine.DELTA_T));
-
-        distanceTraveled += this.velocity.modulus();
+        nextStep(carControls.getAcceleration(), carControls.getRotation());
+    }
 
-        this.position = this.position.add(this.velocity.multiply(LearningEngine.DELTA_T));
+    /**
+     * Makes a step in the simulation changing its position
+     *
+     * @param accelerationControl the acceleration of the car for that step
+     * @param rotationControl the rotation of the steering wheel for that step
+     */
+    public void nextStep(double accelerationControl, double rotationControl) {
+        this.pool.nextStep(index, accelerationControl, rotationControl);
     }
     
     /**
@@ -125,9 +94,7 @@ public class SimpleCar implements LineCollidable {
      * @return the direction
      */
     public Vector2d getDirection(){
-        Vector2d v = new Vector2d(0, 1);
-
-        return v.rotate(this.rotation, Vector2d.origin);
+        return new Vector2d(-Math.sin(this.getRotation()), Math.cos(this.getRotation()));
     }
 
     /**
@@ -145,19 +112,10 @@ public class SimpleCar implements LineCollidable {
      * @return True if the car has hit a wall. False otherwise
      */
     public boolean isDead() {
-        return dead;
+        return pool.dead[index];
     }
 
 
-    /**
-     * Get all the sensors that can collide with the map. For optimisation purposes.
-     *
-     * @return the array of all the sensors
-     */
-    public ArrayList<LineCollidable> getCollidableSensors() {
-        return collidableSensors;
-    }
-
     /**
      * Get an arrayList of sensor data. This is used while the simulation is running to see the captors
      *
@@ -174,14 +132,11 @@ public class SimpleCar implements LineCollidable {
     }
 
     /**
-     * Adds a sensor to the car. If this sensor is of instance LineCollidable (can collide with the map), puts it also in another list for optimisation purposes.
+     * Adds a sensor to the car
      * @param sensor the sensor to add
      */
     public void addSensor(Sensor sensor){
         this.sensors.add(sensor);
-        if(sensor instanceof LineCollidable){
-            this.collidableSensors.add((LineCollidable) sensor);
-        }
     }
 
 
@@ -193,77 +148,116 @@ public class SimpleCar implements LineCollidable {
     public void collide(StaticLineObject line) {
         if(this.isDead()) return;
 
-        if(MathUtils.rectSegmentIntersection(
-                line.getX1(), line.getY1(),
-                line.getX2(), line.getY2(),
-                (float) getTopLeftPosition().getX(), (float) getTopLeftPosition().getY(),
-                (float) getTopRightPosition().getX(), (float) getTopRightPosition().getY(),
-                (float) getBottomRightPosition().getX(), (float) getBottomRightPosition().getY(),
-                (float) getBottomLeftPosition().getX(), (float) getBottomLeftPosition().getY()))
+        if(this.touches(line))
             this.kill();
-        
-        getCollidableSensors().forEach(s -> s.collide(line));
     }
 
     /**
-     * When the car collides with a fitness adder wall
+     * When the car collides with a fitness adder wall. The wall count function is called when the car starts touching the wall
      * @param line
      */
     @Override
     public void collideFitnessAdder(FitnessWallObject line) {
-        //todo: Refactor this into a method to not duplicate code
-        if(MathUtils.rectSegmentIntersection(
-                line.getX1(), line.getY1(),
-                line.getX2(), line.getY2(),
-                (float) getTopLeftPosition().getX(), (float) getTopLeftPosition().getY(),
-                (float) getTopRightPosition().getX(), (float) getTopRightPosition().getY(),
-                (float) getBottomRightPosition().getX(), (float) getBottomRightPosition().getY(),
-                (float) getBottomLeftPosition().getX(), (float) getBottomLeftPosition().getY())){
+        collideFitnessAdder(line.getId(), line.getX1(), line.getY1(), line.getX2(), line.getY2());
+    }
 
+    @Override
+    public void collide(float x1, float y1, float x2, float y2) {
+        if(this.isDead()) return;
 
+        if(this.touches(x1, y1, x2, y2))
+            this.kill();
+    }
 
-            if(!currentTouching.contains(line)){
-                wallCountFunction.accept(line.addCollidableToCollided(this), this);
+    @Override
+    public void collideFitnessAdder(int id, float x1, float y1, float x2, float y2) {
+        if(this.touches(x1, y1, x2, y2)){
+            int crossings = wallCrossings.touch(id, collisionStep);
+            if(crossings > 0){
+                wallCountFunction.accept(crossings, this);
             }
-            currentTouching.add(line);
-
-
+        }
+    }
 
-            //todo: add fitness here
-            //todo: and reset the car timer
+    /**
+     * Called at each step by the maps that follow the progress of the cars with the cells they visit instead of fitness walls.
+     * The wall count function is called with the number of visits of the cell when the car enters a cell, except for its starting cell
+     *
+     * @param cell the id of the cell containing the center of the car
+     */
+    public void enterCell(int cell) {
+        int visits = cellVisits.touch(cell, collisionStep);
+        if(visits > 0 && collisionStep > 0){
+            wallCountFunction.accept(visits, this);
         }
-        else currentTouching.remove(line);
+    }
 
+    /**
+     * Checks if the line intersects the body of the car, using the corners computed in {@link #bake()}
+     *
+     * @param line the line
+     * @return true if the line touches the car
+     */
+    private boolean touches(StaticLineObject line){
+        return touches(line.getX1(), line.getY1(), line.getX2(), line.getY2());
+    }
+
+    /**
+     * Checks if the line intersects the body of the car, using the corners computed in {@link #bake()}
+     *
+     * @param x1 the x coordinate of the first point of the line
+     * @param y1 the y coordinate of the first point of the line
+     * @param x2 the x coordinate of the second point of the line
+     * @param y2 the y coordinate of the second point of the line
+     * @return true if the line touches the car
+     */
+    private boolean touches(float x1, float y1, float x2, float y2){
+        return MathUtils.rectSegmentIntersection(
+                x1, y1,
+                x2, y2,
+                topLeftX, topLeftY,
+                topRightX, topRightY,
+                bottomRightX, bottomRightY,
+                bottomLeftX, bottomLeftY);
     }
 
+    /**
+     * Computes the corners of the car and the bounds of its body. The sensors cast their rays separately. The sin and cos of the rotation are computed once for the four corners.
+     */
     @Override
     public void bake() {
-        getCollidableSensors().forEach(LineCollidable::bake);
-
-        x1 = (float) (this.getCenter().getX() - this.CAR_HEIGHT);
-        y1 = (float) (this.getCenter().getY() - this.CAR_HEIGHT);
-        x2 = (float) (this.getCenter().getX() + this.CAR_HEIGHT);
-        y2 = (float) (this.getCenter().getY() + this.CAR_HEIGHT);
-
-        for (LineCollidable collidableSensor : collidableSensors) {
-            x1 = Math.max(x1, collidableSensor.getX1());
-            x1 = Math.max(x1, collidableSensor.getX2());
-            x2 = Math.min(x2, collidableSensor.getX1());
-            x2 = Math.min(x2, collidableSensor.getX2());
-            y1 = Math.max(y1, collidableSensor.getY1());
-            y1 = Math.max(y1, collidableSensor.getY2());
-            y2 = Math.min(y2, collidableSensor.getY1());
-            y2 = Math.min(y2, collidableSensor.getY2());
-        }
-
+        collisionStep++;
+
+        double x = pool.positionX[index];
+        double y = pool.positionY[index];
+        double centerX = x + this.CAR_WIDTH/2;
+        double centerY = y + this.CAR_HEIGHT/2;
+        double cos = Math.cos(this.getRotation());
+        double sin = Math.sin(this.getRotation());
+
+        //Same as Vector2d#rotate around the center
+        topLeftX = (float) (((x - centerX) * cos) - ((y - centerY) * sin) + centerX);
+        topLeftY = (float) (((x - centerX) * sin) + ((y - centerY) * cos) + centerY);
+        topRightX = (float) (((x + CAR_WIDTH - centerX) * cos) - ((y - centerY) * sin) + centerX);
+        topRightY = (float) (((x + CAR_WIDTH - centerX) * sin) + ((y - centerY) * cos) + centerY);
+        bottomRightX = (float) (((x + CAR_WIDTH - centerX) * cos) - ((y + CAR_HEIGHT - centerY) * sin) + centerX);
+        bottomRightY = (float) (((x + CAR_WIDTH - centerX) * sin) + ((y + CAR_HEIGHT - centerY) * cos) + centerY);
+        bottomLeftX = (float) (((x - centerX) * cos) - ((y + CAR_HEIGHT - centerY) * sin) + centerX);
+        bottomLeftY = (float) (((x - centerX) * sin) + ((y + CAR_HEIGHT - centerY) * cos) + centerY);
+
+        //Bounding box of the body
+        x1 = Math.min(Math.min(topLeftX, topRightX), Math.min(bottomRightX, bottomLeftX));
+        y1 = Math.min(Math.min(topLeftY, topRightY), Math.min(bottomRightY, bottomLeftY));
+        x2 = Math.max(Math.max(topLeftX, topRightX), Math.max(bottomRightX, bottomLeftX));
+        y2 = Math.max(Math.max(topLeftY, topRightY), Math.max(bottomRightY, bottomLeftY));
     }
     
     /**
      * @return top-left corner's position in pixels
      */
     public Vector2d getTopLeftPosition(){
-        double x = this.getPosition().getX();
-        double y = this.getPosition().getY();
+        double x = pool.positionX[index];
+        double y = pool.positionY[index];
         return new Vector2d(x, y).rotate(this.getRotation(), this.getCenter());
     }
 
@@ -271,8 +265,8 @@ public class SimpleCar implements LineCollidable {
      * @return top-right corner's position in pixels
      */
     public Vector2d getTopRightPosition(){
-        double x = this.getPosition().getX() + this.CAR_WIDTH;
-        double y = this.getPosition().getY();
+        double x = pool.positionX[index] + this.CAR_WIDTH;
+        double y = pool.positionY[index];
         return new Vector2d(x, y).rotate(this.getRotation(), this.getCenter());
     }
 
@@ -280,8 +274,8 @@ public class SimpleCar implements LineCollidable {
      * @return bottom-left corner's position in pixels
      */
     public Vector2d getBottomLeftPosition(){
-        double x = this.getPosition().getX();
-        double y = this.getPosition().getY() + this.CAR_HEIGHT;
+        double x = pool.positionX[index];
+        double y = pool.positionY[index] + this.CAR_HEIGHT;
         return (new Vector2d(x, y)).rotate(this.getRotation(), this.getCenter());
     }
 
@@ -289,8 +283,8 @@ public class SimpleCar implements LineCollidable {
      * @return top-right corner's position in pixels
      */
     public Vector2d getBottomRightPosition(){
-        double x = this.getPosition().getX() + this.CAR_WIDTH;
-        double y = this.getPosition().getY() + this.CAR_HEIGHT;
+        double x = pool.positionX[index] + this.CAR_WIDTH;
+        double y = pool.positionY[index] + this.CAR_HEIGHT;
         return new Vector2d(x, y).rotate(this.getRotation(), this.getCenter());
     }
     
@@ -300,7 +294,7 @@ public class SimpleCar implements LineCollidable {
      * @return the rotation of the car
      */
     public double getRotation(){
-        return this.rotation;
+        return pool.rotation[index];
     }
 
     /**
@@ -309,7 +303,21 @@ public class SimpleCar implements LineCollidable {
      * @return the position of the car
      */
     public Vector2d getPosition() {
-    	return this.position;
+    	return new Vector2d(pool.positionX[index], pool.positionY[index]);
+    }
+
+    /**
+     * @return the x coordinate of the center of the car
+     */
+    public double getCenterX(){
+        return pool.positionX[index] + this.CAR_WIDTH/2;
+    }
+
+    /**
+     * @return the y coordinate of the center of the car
+     */
+    public double getCenterY(){
+        return pool.positionY[index] + this.CAR_HEIGHT/2;
     }
 
     /**
@@ -318,7 +326,7 @@ public class SimpleCar implements LineCollidable {
      * @return the center position of the car
      */
     public Vector2d getCenter(){
-        return this.position.add(new Vector2d(this.CAR_WIDTH/2, this.CAR_HEIGHT/2));
+        return new Vector2d(pool.positionX[index] + this.CAR_WIDTH/2, pool.positionY[index] + this.CAR_HEIGHT/2);
     }
 
     @Override
@@ -342,15 +350,30 @@ public class SimpleCar implements LineCollidable {
     }
     
     public void kill(){
-        dead = true;
+        pool.dead[index] = true;
     }
 
     /**
-     * Get all the forces applied to the object
+     * Get all the forces applied to the object during the last step. The vectors are created at each call, for the inspector.
      * @return the forces applied to the object
      */
     public ArrayList<Vector2d> getForces(){
-        return this.forces;
+        ArrayList<Vector2d> forces = new ArrayList<>();
+        if(!pool.forcesApplied[index])
+            return forces;
+
+        double[] values = pool.forces;
+        int offset = index * CarPool.FORCES_SIZE;
+        forces.add(new Vector2d(values[offset], values[offset + 1]));
+        forces.get(0).setTag("Accel from back");
+        forces.add(new Vector2d(values[offset + 2], values[offset + 3]));
+        forces.get(1).setTag("Break force");
+        forces.add(new Vector2d(values[offset + 4], values[offset + 5]));
+        forces.get(2).setTag("Air resistance");
+        forces.add(new Vector2d(values[offset + 6], values[offset + 7]));
+        forces.get(3).setTag("Directionnal resistance");
+
+        return forces;
     }
 
 
@@ -358,14 +381,14 @@ public class SimpleCar implements LineCollidable {
      * @return The velocity of the object
      */
     public Vector2d getVelocity() {
-        return velocity;
+        return new Vector2d(pool.velocityX[index], pool.velocityY[index]);
     }
     
     /**
      * @return The acceleration of the car
      */
     public Vector2d getAcceleration() {
-    	return this.acceleration;
+    	return new Vector2d(pool.accelerationX[index], pool.accelerationY[index]);
     }
 
     /**
@@ -388,7 +411,7 @@ public class SimpleCar implements LineCollidable {
      * @return the distance traveled in pixels
      */
     public double getDistanceTraveled() {
-        return distanceTraveled;
+        return pool.distanceTraveled[index];
     }
 
     /**
@@ -396,7 +419,7 @@ public class SimpleCar implements LineCollidable {
      * @param orientation the orientation
      */
     public void setOrientation(double orientation){
-        this.rotation = orientation;
+        pool.rotation[index] = orientation;
     }
 
     public int getFitnessWallCount() { return fitnessWallCount; }
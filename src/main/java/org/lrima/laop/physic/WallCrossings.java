@@ -0,0 +1,107 @@
+package org.lrima.laop.physic;
+
+/**
+ * Keeps the number of times a car crossed each fitness wall, with the id of the wall as the key.
+ * A car only touches a few of the walls of a map, so the counts are kept in a small open addressing table of primitives. <br/>
+ * Also used to count the number of times a car entered each cell of a map, with the id of the cell as the key.
+ *
+ * @author Léonard
+ */
+public class WallCrossings {
+    private static final int INITIAL_CAPACITY = 16;
+
+    //Id of the wall plus one, 0 if the slot is empty
+    private int[] walls;
+    private int[] crossings;
+    //Last step the car touched the wall
+    private int[] lastStep;
+    private int size;
+
+    /**
+     * Creates an empty table
+     */
+    public WallCrossings() {
+        this.walls = new int[INITIAL_CAPACITY];
+        this.crossings = new int[INITIAL_CAPACITY];
+        this.lastStep = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Records that the car touches a wall during a step. It is a new crossing if the car did not touch the wall during the previous step
+     *
+     * @param wall the id of the wall
+     * @param step the step of the car
+     * @return the number of times the car crossed the wall if it is a new crossing, 0 otherwise
+     */
+    public int touch(int wall, int step) {
+        int slot = find(wall);
+
+        if(walls[slot] == 0){
+            walls[slot] = wall + 1;
+            crossings[slot] = 1;
+            lastStep[slot] = step;
+            size++;
+
+            if(size * 2 > walls.length)
+                grow();
+            return 1;
+        }
+
+        boolean newCrossing = lastStep[slot] < step - 1;
+        lastStep[slot] = step;
+        if(!newCrossing)
+            return 0;
+
+        return ++crossings[slot];
+    }
+
+    /**
+     * Gets the number of times the car crossed a wall
+     *
+     * @param wall the id of the wall
+     * @return the number of crossings
+     */
+    public int getCrossings(int wall) {
+        int slot = find(wall);
+        return walls[slot] == 0 ? 0 : crossings[slot];
+    }
+
+    /**
+     * Finds the slot of the wall, or the empty slot where it should be put
+     *
+     * @param wall the id of the wall
+     * @return the slot
+     */
+    private int find(int wall) {
+        int mask = walls.length - 1;
+        int slot = (wall * 0x9E3779B9) >>> 16 & mask;
+
+        while (walls[slot] != 0 && walls[slot] != wall + 1) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    /**
+     * Doubles the size of the table
+     */
+    private void grow() {
+        int[] oldWalls = walls;
+        int[] oldCrossings = crossings;
+        int[] oldLastStep = lastStep;
+
+        walls = new int[oldWalls.length * 2];
+        crossings = new int[oldWalls.length * 2];
+        lastStep = new int[oldWalls.length * 2];
+
+        for (int i = 0; i < oldWalls.length; i++) {
+            if(oldWalls[i] == 0) continue;
+
+            int slot = find(oldWalls[i] - 1);
+            walls[slot] = oldWalls[i];
+            crossings[slot] = oldCrossings[i];
+            lastStep[slot] = oldLastStep[i];
+        }
+    }
+}
@@ -4,22 +4,18 @@ import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
 import javafx.scene.paint.Paint;
 import org.bytedeco.javacpp.presets.opencv_core;
-import org.lrima.laop.physic.SimpleCar;
-import org.lrima.laop.simulation.map.LineCollidable;
-
-import java.util.HashMap;
 
 /**
  * A wall object that as a different color than the normal wall.
- * It also gives a fitness to cars that hit them
+ * It also gives a fitness to cars that hit them. The number of times each car hit the wall is kept by the car with the id of the wall
  * @author Clement Bisaillon
  */
 public class FitnessWallObject extends StaticLineObject {
 
     /**
-     * Hashmap containing objects that this wall collided with as the key and the number of times of collision as the value
+     * Index of the wall among the fitness walls of its map
      */
-    private HashMap<LineCollidable, Integer> objectCollidedWith = new HashMap();
+    private final int id;
 
     /**
      * Creates a static line object with parameters x1, x2, y1, y2
@@ -28,21 +24,18 @@ public class FitnessWallObject extends StaticLineObject {
      * @param y1 The y value of the first coordinate
      * @param x2 The x value of the second coordinate
      * @param y2 The y value of the second coordinate
+     * @param id The index of the wall among the fitness walls of its map
      */
-    public FitnessWallObject(float x1, float y1, float x2, float y2) {
+    public FitnessWallObject(float x1, float y1, float x2, float y2, int id) {
         super(x1, y1, x2, y2);
+        this.id = id;
     }
 
-    public int addCollidableToCollided(LineCollidable collidable){
-        if(!objectCollidedWith.containsKey(collidable)){
-            objectCollidedWith.put(collidable, 1);
-            return 1;
-        }else{
-            //Increase the value by one
-            int value = objectCollidedWith.get(collidable);
-            objectCollidedWith.put(collidable, value + 1);
-            return value + 1;
-        }
+    /**
+     * @return the index of the wall among the fitness walls of its map
+     */
+    public int getId() {
+        return id;
     }
 
     @Override
@@ -5,11 +5,11 @@ import javafx.scene.paint.Color;
 import javafx.scene.paint.Paint;
 
 /**
- * Static object of a simulation representing a single line
+ * Static object of a simulation representing a single line. The line can not be modified, so it can be shared between threads
  * @author Clement Bisaillon
  */
 public class StaticLineObject implements StaticObject {
-    protected float x1, y1, x2, y2;
+    protected final float x1, y1, x2, y2;
     protected final Color COLOR = new Color(32.0/255.0, 78.0/255.0, 95.0/255.0, 1);
 
     /**
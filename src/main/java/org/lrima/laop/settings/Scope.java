@@ -79,6 +79,7 @@ public class Scope extends LinkedHashMap<String, Option> {
         if (value instanceof String) return new OptionString((String) value);
         if (value instanceof Integer) return new OptionInt((Integer) value);
         if (value instanceof Double) return new OptionDouble((Double) value);
+        if (value instanceof Enum<?>) return new OptionEnum((Enum) value);
         if (value instanceof Class<?>) System.err.println("YOU CANNOT PUT A CLASS AS VALUE. YOU MUST PUT AN OptionClass TO DO SO.");
 
         throw new UnsupportedOperationException("The type : " + value.getClass() + " is not supported by the Option");
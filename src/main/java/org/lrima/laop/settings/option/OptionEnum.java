@@ -0,0 +1,52 @@
+package org.lrima.laop.settings.option;
+
+import com.jfoenix.controls.JFXComboBox;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.scene.Node;
+
+/**
+ * An option that can only take one of the constants of an enum, so it cannot be set to an unknown value
+ *
+ * @author Léonard
+ * @param <E> the enum type
+ */
+public class OptionEnum<E extends Enum<E>> implements Option<E> {
+    private E value;
+
+    /**
+     * Creates a new option enum. The possible values are all the constants of the enum of the default value
+     *
+     * @param value the default selected value
+     */
+    public OptionEnum(E value) {
+        this.value = value;
+    }
+
+    @Override
+    public E getValue() {
+        return value;
+    }
+
+    @Override
+    public boolean setValue(E value) {
+        if(value == null) return false;
+
+        this.value = value;
+        return true;
+    }
+
+    @Override
+    public Node generateComponent() {
+        ObservableList<E> observableList = FXCollections.observableArrayList(value.getDeclaringClass().getEnumConstants());
+
+        JFXComboBox<E> comboBox = new JFXComboBox<>(observableList);
+        comboBox.getSelectionModel().select(value);
+        comboBox.getSelectionModel().selectedItemProperty().addListener((s, oldOb, newOb) ->{
+            setValue(newOb);
+        });
+
+        return comboBox;
+    }
+}
@@ -0,0 +1,48 @@
+package org.lrima.laop.simulation;
+
+/**
+ * Interface used to create environnements that step all their agents at once using primitive arrays.
+ * The arrays are owned by the caller and filled by the environnement, so no object is created at each step.
+ *
+ * The values of the agent <code>i</code> are at <code>observations[i * getObservationSize() + k]</code>,
+ * <code>actions[i * ACTION_SIZE + k]</code>, <code>rewards[i]</code> and <code>done[i]</code>.
+ * The number of agents is the length of the <code>rewards</code> array.
+ *
+ * @author Léonard
+ */
+public interface BatchEnvironnement extends Environnement {
+    /**
+     * The number of actions of each agent : the acceleration and the rotation
+     */
+    int ACTION_SIZE = 2;
+
+    /**
+     * Gets the number of values observed by each agent
+     *
+     * @return the number of values observed by each agent
+     */
+    int getObservationSize();
+
+    /**
+     * Resets the environnement with <code>rewards.length</code> agents and fills the arrays with their initial state
+     *
+     * See {@link Environnement#reset()}
+     *
+     * @param observations the array to fill with the observations of the agents
+     * @param rewards the array to fill with the rewards of the agents
+     * @param done the array to fill with true for the agents that are done
+     */
+    void reset(double[] observations, double[] rewards, boolean[] done);
+
+    /**
+     * Does a step in the environnement with the actions of all the agents and fills the arrays with their new state
+     *
+     * See {@link Environnement#step(org.lrima.laop.physic.CarControls)}
+     *
+     * @param actions the acceleration and rotation of each agent
+     * @param observations the array to fill with the observations of the agents
+     * @param rewards the array to fill with the rewards of the agents
+     * @param done the array to fill with true for the agents that are done
+     */
+    void step(double[] actions, double[] observations, double[] rewards, boolean[] done);
+}
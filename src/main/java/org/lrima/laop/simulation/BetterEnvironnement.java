@@ -3,60 +3,83 @@ package org.lrima.laop.simulation;
 import javafx.scene.canvas.GraphicsContext;
 import org.lrima.laop.core.LAOP;
 import org.lrima.laop.physic.CarControls;
+import org.lrima.laop.physic.CarPool;
 import org.lrima.laop.physic.SimpleCar;
 import org.lrima.laop.simulation.buffer.SimulationBuffer;
 import org.lrima.laop.simulation.buffer.SimulationSnapshot;
 import org.lrima.laop.simulation.data.CarData;
+import org.lrima.laop.simulation.map.AbstractMap;
+import org.lrima.laop.simulation.map.ChunkedMazeMap;
+import org.lrima.laop.simulation.map.MapCache;
+import org.lrima.laop.simulation.map.MapSupplier;
 import org.lrima.laop.simulation.map.MazeMap;
 import org.lrima.laop.simulation.sensors.ProximityLineSensor;
-import org.lrima.laop.utils.math.Vector2d;
+import org.lrima.laop.simulation.sensors.RayCaster;
+import org.lrima.laop.simulation.sensors.Sensor;
 
 import java.awt.geom.Point2D;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * A environnement sample. It has a maze map containing cars.
  *
  * @author Léonard
  */
-public class BetterEnvironnement implements MultiAgentEnvironnement {
-    private MazeMap mazeMap;
-    private ArrayList<MazeMap> testMaps;
+public class BetterEnvironnement implements MultiAgentEnvironnement, BatchEnvironnement {
+    //Number of maps generated in advance
+    private static final int MAP_QUEUE_SIZE = 2;
+
+    private AbstractMap mazeMap;
+    private MapSupplier<AbstractMap> mapSupplier;
+    private ArrayList<Future<AbstractMap>> testMaps;
     private int currentTestMap = 0;
     private SimulationBuffer buffer;
+    private CarPool carPool;
     private ArrayList<SimpleCar> simpleCars;
+    private RayCaster rayCaster;
     private boolean finished;
     private int step = 0;
     //private int MAX_STEP = 500;
     private int numberOfSensors;
     private int mapSize;
+    private ForkJoinPool pool;
+
+
 
+    //Arrays used by the agent based methods
+    private double[] actions;
+    private double[] observations;
+    private double[] rewards;
+    private boolean[] done;
 
 
     @Override
-    public ArrayList<Agent> step(ArrayList<CarControls> carControls) {
-        if(this.isFinished())
-            return this.reset(carControls.size());
+    public void step(double[] actions, double[] observations, double[] rewards, boolean[] done) {
+        if(this.isFinished()){
+            this.reset(observations, rewards, done);
+            return;
+        }
+
+        if(pool != null)
+            pool.invoke(new CarStepTask(actions, 0, simpleCars.size()));
+        else
+            stepCars(actions, 0, simpleCars.size());
 
-        ArrayList<Agent> agents = new ArrayList<>();
         finished = true;
 
         for (int i = 0; i < simpleCars.size(); i++) {
             SimpleCar simpleCar = simpleCars.get(i);
-            CarControls carControl = carControls.get(i);
 
-            if(simpleCar.getMaxStep() < step){
-                simpleCar.kill();
-            }
-
-            simpleCar.nextStep(carControl);
-            mazeMap.collide(simpleCar);
-
-            agents.add(new Agent(simpleCar.getSensors(), evalFitness(simpleCar)));
+            writeObservations(simpleCar, i, observations);
+            rewards[i] = evalFitness(simpleCar);
+            done[i] = simpleCar.isDead();
             if(!simpleCar.isDead()){
                 finished = false;
             }
-
         }
 
         step++;
@@ -64,6 +87,75 @@ public class BetterEnvironnement implements MultiAgentEnvironnement {
         /*if(step > this.MAX_STEP){
             this.finished = true;
         }*/
+    }
+
+    @Override
+    public ArrayList<Agent> step(ArrayList<CarControls> carControls) {
+        if(this.isFinished())
+            return this.reset(carControls.size());
+
+        //The arrays are only made by reset(int), the cars may have been reset with the arrays of a batch
+        allocateAgentArrays(carControls.size());
+        for (int i = 0; i < carControls.size(); i++) {
+            carControls.get(i).writeTo(actions, i);
+        }
+        this.step(actions, observations, rewards, done);
+
+        return generateAgents();
+    }
+
+    /**
+     * Moves the cars between index <code>from</code> (inclusive) and <code>to</code> (exclusive), collides them with the map and casts their sensors.
+     * The cars only modify their own state, so different ranges can be stepped at the same time
+     *
+     * @param actions the actions of all the cars
+     * @param from the index of the first car to step
+     * @param to the index after the last car to step
+     */
+    private void stepCars(double[] actions, int from, int to){
+        for (int i = from; i < to; i++) {
+            SimpleCar simpleCar = simpleCars.get(i);
+
+            if(simpleCar.getMaxStep() < step){
+                simpleCar.kill();
+            }
+        }
+
+        carPool.step(actions, from, to);
+
+        for (int i = from; i < to; i++) {
+            mazeMap.collide(simpleCars.get(i));
+        }
+
+        rayCaster.cast(mazeMap, from, to);
+    }
+
+    /**
+     * Copies the values of the sensors of the car in the observations
+     *
+     * @param simpleCar the car
+     * @param index the index of the car
+     * @param observations the observations of all the cars
+     */
+    private void writeObservations(SimpleCar simpleCar, int index, double[] observations){
+        ArrayList<Sensor> sensors = simpleCar.getSensors();
+        int offset = index * numberOfSensors;
+
+        for (int i = 0; i < numberOfSensors; i++) {
+            observations[offset + i] = sensors.get(i).getValue();
+        }
+    }
+
+    /**
+     * Creates the agents from the cars and the rewards of the last step
+     *
+     * @return the agents
+     */
+    private ArrayList<Agent> generateAgents(){
+        ArrayList<Agent> agents = new ArrayList<>();
+        for (int i = 0; i < simpleCars.size(); i++) {
+            agents.add(new Agent(simpleCars.get(i).getSensors(), rewards[i]));
+        }
 
         return agents;
     }
@@ -74,26 +166,63 @@ public class BetterEnvironnement implements MultiAgentEnvironnement {
     }
 
     @Override
-    public ArrayList<Agent> reset(int numberOfAgents) {
+    public void reset(double[] observations, double[] rewards, boolean[] done) {
         step = 0;
-        buffer.clear();
+        if(buffer != null)
+            buffer.clear();
         finished = false;
-        ArrayList<Agent> agents = new ArrayList<>();
-        simpleCars = generateCarObjects(numberOfAgents);
+        simpleCars = generateCarObjects(rewards.length);
+        rayCaster = new RayCaster(simpleCars);
 
         for (SimpleCar simpleCar : simpleCars) {
             mazeMap.collide(simpleCar);
-            agents.add(new Agent(simpleCar.getSensors(), 0));
         }
+        rayCaster.cast(mazeMap, 0, simpleCars.size());
 
-        return agents;
+        for (int i = 0; i < simpleCars.size(); i++) {
+            SimpleCar simpleCar = simpleCars.get(i);
+
+            writeObservations(simpleCar, i, observations);
+            rewards[i] = 0;
+            done[i] = false;
+        }
+    }
+
+    @Override
+    public ArrayList<Agent> reset(int numberOfAgents) {
+        allocateAgentArrays(numberOfAgents);
+        this.reset(observations, rewards, done);
+
+        return generateAgents();
+    }
+
+    /**
+     * Creates the arrays used by the agent based methods if they do not fit the number of agents
+     *
+     * @param numberOfAgents the number of agents
+     */
+    private void allocateAgentArrays(int numberOfAgents){
+        if(rewards == null || rewards.length != numberOfAgents){
+            actions = new double[numberOfAgents * ACTION_SIZE];
+            observations = new double[numberOfAgents * numberOfSensors];
+            rewards = new double[numberOfAgents];
+            done = new boolean[numberOfAgents];
+        }
+    }
+
+    @Override
+    public int getObservationSize() {
+        return numberOfSensors;
     }
 
     private ArrayList<SimpleCar> generateCarObjects(int numberOfCars){
         ArrayList<SimpleCar> carObjects = new ArrayList<>();
+        carPool = new CarPool(numberOfCars);
+
         for(int i = 0 ; i < numberOfCars ; i++) {
             Point2D start = mazeMap.getStartPoint();
-            SimpleCar car = new SimpleCar(new Vector2d(start.getX(), start.getY()), mazeMap.getStartingOrientation());
+            carPool.place(i, start.getX(), start.getY(), mazeMap.getStartingOrientation());
+            SimpleCar car = new SimpleCar(carPool, i);
 
             double orientationIncrement = Math.PI / numberOfSensors;
             //attribute fitness
@@ -122,54 +251,84 @@ public class BetterEnvironnement implements MultiAgentEnvironnement {
 
     @Override
     public void render() {
-        if(buffer != null) {
-            SimulationSnapshot snapshot = new SimulationSnapshot();
-            ArrayList<CarData> carData = new ArrayList<>();
-
-            int bestCarIndex = 0;
-            int index = 0;
+        //Do not build the snapshot if the buffer does not keep this step
+        if(buffer == null || !buffer.isCapturingStep())
+            return;
 
-            for(SimpleCar car : this.simpleCars) {
-                CarData data = new CarData(car);
+        SimulationSnapshot snapshot = new SimulationSnapshot();
+        CarData bestCarData = null;
+        double bestFitness = Double.NEGATIVE_INFINITY;
 
-                double fitness = this.evalFitness(car);
-                data.setFitness(fitness);
+        for(SimpleCar car : this.simpleCars) {
+            CarData data = new CarData(car);
 
-                //Check if its the best
-                if(fitness > evalFitness(this.simpleCars.get(bestCarIndex))){
-                    bestCarIndex = index;
-                }
+            double fitness = this.evalFitness(car);
+            data.setFitness(fitness);
 
-                carData.add(data);
-                index++;
+            //Check if its the best
+            if(fitness > bestFitness){
+                bestFitness = fitness;
+                bestCarData = data;
             }
 
-            //Assign the status of best to the best car
-            CarData bestCarData = new CarData(simpleCars.get(bestCarIndex));
-            bestCarData.setIsBest(true);
-            carData.set(bestCarIndex, bestCarData);
+            snapshot.addCar(data);
+        }
 
-            for(CarData data : carData){
-                snapshot.addCar(data);
-            }
+        //Assign the status of best to the best car
+        if(bestCarData != null)
+            bestCarData.setIsBest(true);
 
-            this.buffer.addSnapshot(snapshot);
-        }
+        this.buffer.addSnapshot(snapshot);
     }
 
     @Override
     public void init(LearningEngine learningEngine) {
+        init(learningEngine, true);
+    }
+
+    @Override
+    public void initWithoutTestMaps(LearningEngine learningEngine) {
+        init(learningEngine, false);
+    }
+
+    /**
+     * Initialise the environnement with the learning engine
+     *
+     * @param learningEngine the learning engine
+     * @param withTestMaps true if the test maps must be generated
+     */
+    private void init(LearningEngine learningEngine, boolean withTestMaps) {
         this.buffer = learningEngine.getBuffer();
         this.numberOfSensors = (int) learningEngine.getSettings().get(LAOP.KEY_NUMBER_OF_SENSORS);
         this.mapSize = (int) learningEngine.getSettings().get(LAOP.KEY_MAP_SIZE);
+        this.pool = learningEngine.getPool();
+        int chunkSize = (int) learningEngine.getSettings().get(LAOP.KEY_MAP_CHUNK_SIZE);
         this.testMaps = new ArrayList<>();
-
-        //Create the test maps
-        //Used so that the test maps are always the same
-        for(int i = 0 ; i < this.getNumberTestMap() ; i++){
-            MazeMap map = new MazeMap(mapSize);
-            map.bake();
-            this.testMaps.add(map);
+        int numberOfTestMaps = withTestMaps ? this.getNumberTestMap() : 0;
+
+        //Create the test maps in the background. They are only needed for the first evaluation
+        //The test maps have fixed seeds so that they are always the same, and can be kept in the cache between runs
+        int testMapsSeed = (int) learningEngine.getSettings().get(LAOP.KEY_TEST_MAPS_SEED);
+        String cacheDirectory = (String) learningEngine.getSettings().get(LAOP.KEY_MAP_CACHE_DIRECTORY);
+        MapCache mapCache = cacheDirectory == null || cacheDirectory.isEmpty() ? null : new MapCache(Paths.get(cacheDirectory));
+
+        //The chunked mazes only generate their chunks when the cars get near them, so they are not kept in the cache
+        if(chunkSize > 0) {
+            this.mapSupplier = new MapSupplier<>(() -> new ChunkedMazeMap(mapSize, chunkSize), MAP_QUEUE_SIZE);
+            for(int i = 0 ; i < numberOfTestMaps ; i++){
+                long seed = testMapsSeed + i;
+                this.testMaps.add(MapSupplier.generateLater(() -> new ChunkedMazeMap(mapSize, chunkSize, seed, ChunkedMazeMap.DEFAULT_MAX_LOADED_CHUNKS)));
+            }
+        }
+        else {
+            this.mapSupplier = new MapSupplier<>(() -> new MazeMap(mapSize), MAP_QUEUE_SIZE);
+            for(int i = 0 ; i < numberOfTestMaps ; i++){
+                long seed = testMapsSeed + i;
+                if(mapCache == null)
+                    this.testMaps.add(MapSupplier.generateLater(() -> new MazeMap(mapSize, seed)));
+                else
+                    this.testMaps.add(MapSupplier.generateLater(() -> mapCache.maze(mapSize, seed)));
+            }
         }
         this.newMap();
     }
@@ -181,8 +340,7 @@ public class BetterEnvironnement implements MultiAgentEnvironnement {
 
     @Override
     public void newMap() {
-        mazeMap = new MazeMap(mapSize);
-        mazeMap.bake();
+        mazeMap = mapSupplier.next();
 
         if(simpleCars != null) {
             for (SimpleCar car : this.simpleCars) {
@@ -193,7 +351,7 @@ public class BetterEnvironnement implements MultiAgentEnvironnement {
 
     @Override
     public void nextTestMap() {
-        mazeMap = this.testMaps.get(currentTestMap);
+        mazeMap = MapSupplier.await(this.testMaps.get(currentTestMap));
         //Sets the good starting orientation of the cars
         if(simpleCars != null) {
             for (SimpleCar car : this.simpleCars) {
@@ -209,6 +367,18 @@ public class BetterEnvironnement implements MultiAgentEnvironnement {
         this.currentTestMap = 0;
     }
 
+    @Override
+    public Environnement testEnvironnement(int testMap) {
+        //The maps are only read by the cars, so the test environnements can share them
+        BetterEnvironnement environnement = new BetterEnvironnement();
+        environnement.numberOfSensors = this.numberOfSensors;
+        environnement.mapSize = this.mapSize;
+        environnement.testMaps = this.testMaps;
+        environnement.mazeMap = MapSupplier.await(this.testMaps.get(testMap));
+
+        return environnement;
+    }
+
     @Override
     public void draw(GraphicsContext gc) {
         this.mazeMap.draw(gc);
@@ -217,4 +387,39 @@ public class BetterEnvironnement implements MultiAgentEnvironnement {
     private double evalFitness(SimpleCar car){
         return car.getFitnessWallCount();
     }
+
+    /**
+     * Steps a range of cars in the pool. The range is split in two until it is small enough to be stepped on one thread
+     */
+    private class CarStepTask extends RecursiveAction {
+        private static final int THRESHOLD = 8;
+
+        private double[] actions;
+        private int from;
+        private int to;
+
+        /**
+         * Creates a task stepping the cars between index <code>from</code> (inclusive) and <code>to</code> (exclusive)
+         *
+         * @param actions the actions of all the cars
+         * @param from the index of the first car to step
+         * @param to the index after the last car to step
+         */
+        CarStepTask(double[] actions, int from, int to) {
+            this.actions = actions;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from <= THRESHOLD){
+                stepCars(actions, from, to);
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new CarStepTask(actions, from, middle), new CarStepTask(actions, middle, to));
+        }
+    }
 }
@@ -43,6 +43,16 @@ public interface Environnement extends Drawable {
      */
     void init(LearningEngine learningEngine);
 
+    /**
+     * Initialise the environnement with the learning engine, without preparing the test maps.
+     * Used for the environnements that are never evaluated, like the ones of the shards of the tournament
+     *
+     * @param learningEngine the learning engine
+     */
+    default void initWithoutTestMaps(LearningEngine learningEngine) {
+        init(learningEngine);
+    }
+
 
     void newMap();
     void nextTestMap();
@@ -56,4 +66,15 @@ public interface Environnement extends Drawable {
      * @return the number of map to evaluate the algorithm on
      */
     int getNumberTestMap();
+
+    /**
+     * Creates a new environnement that plays on the test map at index <code>testMap</code>. It does not render to the buffer.
+     * Used to evaluate the test maps on multiple threads at the same time.
+     *
+     * @param testMap the index of the test map
+     * @return the new environnement, or null if this environnement must be evaluated on a single thread
+     */
+    default Environnement testEnvironnement(int testMap) {
+        return null;
+    }
 }
@@ -1,6 +1,5 @@
 package org.lrima.laop.simulation;
 
-import com.sun.xml.internal.ws.api.config.management.policy.ManagementAssertion;
 import javafx.stage.Stage;
 import org.lrima.laop.core.LAOP;
 import org.lrima.laop.network.LearningAlgorithm;
@@ -13,6 +12,14 @@ import org.lrima.laop.utils.Actions.Action;
 import org.lrima.laop.utils.Console;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * A engine that will simulate all the learning engines
@@ -21,6 +28,7 @@ import java.util.ArrayList;
  */
 public class LearningEngine implements Runnable{
     public static double DELTA_T = 0.05;
+    private static final int TOURNAMENT_EPISODES = 10000;
     private SimulationBuffer simulationBuffer;
     private Settings settings;
 
@@ -30,15 +38,23 @@ public class LearningEngine implements Runnable{
     private ArrayList<Action<LearningEngine>> onEnd;
 
     private LearningAlgorithm learningAlgorithm;
-    private Environnement environnement;
+    //Written by the thread training the algorithms and read by the interface
+    private volatile Environnement environnement;
     private AlgorithmData learningData;
     private AlgorithmData trainedData;
     private Stage mainScene;
+    private ForkJoinPool pool;
+
+    /**
+     * The engine that created this one to train a single algorithm concurrently with the others. Null if this engine is the main one
+     */
+    private LearningEngine parent;
+    private volatile LearningEngine[] batchEngines;
 
     private final Object lock = new Object();
 
-    private boolean alive;
-    private boolean pause;
+    private volatile boolean alive;
+    //Only read and written while holding the lock
     private boolean paused = false;
 
     /**
@@ -56,6 +72,32 @@ public class LearningEngine implements Runnable{
         this.onEnd = new ArrayList<>();
         this.learningData = new AlgorithmData();
         this.trainedData = new AlgorithmData();
+
+        int numberOfThreads = (int) settings.get(Settings.GLOBAL_SCOPE, LAOP.KEY_NUMBER_OF_THREADS);
+        if(numberOfThreads > 1)
+            this.pool = new ForkJoinPool(numberOfThreads);
+    }
+
+    /**
+     * Creates a learning engine that trains only the algorithm of the batch <code>batchCount</code>, so that it can run at the same time as the others.
+     * It has its own environnement, and writes its results in the scope of its algorithm in the data of the parent.
+     * The first batch writes to the buffer of the parent so that it is the one shown in the interface. The others have no buffer, since nothing shows them.
+     *
+     * @param parent the engine running all the algorithms
+     * @param batchCount the batch of the algorithm to train
+     */
+    private LearningEngine(LearningEngine parent, int batchCount) {
+        this.parent = parent;
+        this.simulationBuffer = batchCount == 0 ? parent.simulationBuffer : null;
+        this.settings = parent.settings;
+        this.batchCount = batchCount;
+
+        this.onBatchStarted = parent.onBatchStarted;
+        this.onEnd = new ArrayList<>();
+        this.learningData = parent.learningData;
+        this.trainedData = parent.trainedData;
+        this.mainScene = parent.mainScene;
+        this.pool = parent.pool;
     }
 
     /**
@@ -69,65 +111,204 @@ public class LearningEngine implements Runnable{
 
     @Override
     public void run() {
-        synchronized (lock){
-            runAll();
-        }
+        runAll();
     }
 
     /**
-     * Run all the learning algorithms one after the other
+     * Run all the learning algorithms, one after the other or concurrently depending on the settings
      */
     private void runAll(){
-        this.environnement = generateEnvironnement();
-        this.environnement.init(this);
-
         LearningAlgorithm[] trained = new LearningAlgorithm[this.settings.getLocalScopeKeys().size()];
 
         //train
-        for (this.batchCount = 0; batchCount < this.settings.getLocalScopeKeys().size(); batchCount++) {
-            alive = true;
-            Console.info("Batch %s started", this.getBatchCount() + 1);
-            this.onBatchStarted.forEach(b -> b.handle(this));
+        int concurrentAlgorithms = (int) settings.get(Settings.GLOBAL_SCOPE, LAOP.KEY_NUMBER_OF_CONCURRENT_ALGORITHMS);
+        if(concurrentAlgorithms > 1 && trained.length > 1)
+            trainConcurrently(trained, concurrentAlgorithms);
+        else
+            trainSequentially(trained);
 
-            learningAlgorithm = generateLearningAlgorithm();
-            learningAlgorithm.train(environnement, this);
+        //Get the average score of the algorithm
+        if(pool != null && Arrays.stream(trained).allMatch(LearningAlgorithm::canBeTestedConcurrently))
+            compareInParallel(trained);
+        else
+            compareSequentially(trained);
 
+        onEnd.forEach((a) -> a.handle(this));
+        learningData.toCsv("learning");
+        trainedData.toCsv("training");
+    }
 
-            trained[batchCount] = learningAlgorithm;
-        }
 
-        //Get the average score of the algorithm
+    /**
+     * Makes all the trained algorithms play against each other in the same environnement, episode after episode
+     *
+     * @param trained the trained algorithms
+     */
+    private void compareSequentially(LearningAlgorithm[] trained){
         environnement = generateEnvironnement();
         environnement.init(this);
 
-        if(environnement instanceof MultiAgentEnvironnement){
-            int episode = 0;
-            while(episode < 10000){
-                ArrayList<Agent> agents = ((MultiAgentEnvironnement) environnement).reset(trained.length);
-                while (!environnement.isFinished()){
-                    ArrayList<CarControls> carControls = new ArrayList<>();
-                    for (int i = 0; i < trained.length; i++) {
-                        carControls.add(trained[i].test(agents.get(i)));
-                    }
-                    agents = ((MultiAgentEnvironnement) environnement).step(carControls);
+        putTrainedData(playTournament(trained, environnement, TOURNAMENT_EPISODES, true));
+    }
+
+    /**
+     * Splits the episodes of the tournament between shards running at the same time in the pool.
+     * Each shard has its own environnement, and so its own maps. The results are merged in the order of the shards.
+     *
+     * @param trained the trained algorithms
+     */
+    private void compareInParallel(LearningAlgorithm[] trained){
+        int numberOfShards = pool.getParallelism();
+        ArrayList<Callable<double[][]>> shards = new ArrayList<>();
+
+        for (int i = 0; i < numberOfShards; i++) {
+            int episodes = (i + 1) * TOURNAMENT_EPISODES / numberOfShards - i * TOURNAMENT_EPISODES / numberOfShards;
+            shards.add(() -> {
+                //The shard has its own environnement and maps. Its engine has no buffer, so the episodes are played without rendering
+                Environnement shardEnvironnement = generateEnvironnement();
+                shardEnvironnement.initWithoutTestMaps(new LearningEngine(this, trained.length));
+                return playTournament(trained, shardEnvironnement, episodes, false);
+            });
+        }
 
-                    environnement.render();
+        List<Future<double[][]>> results = pool.invokeAll(shards);
+        try {
+            for (Future<double[][]> result : results) {
+                putTrainedData(result.get());
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("A shard of the tournament failed", e);
+        }
+    }
 
-                }
+    /**
+     * Plays episodes where all the trained algorithms drive at the same time in the environnement. A new map is used for each episode,
+     * so the sequential and the sharded tournaments are both played on many maps: the shards have their own environnements and could not share one map.
+     *
+     * @param trained the trained algorithms
+     * @param environnement the environnement to play in. Must be a MultiAgentEnvironnement
+     * @param episodes the number of episodes to play
+     * @param render true if each step must be rendered to the buffer
+     * @return the final reward of each algorithm for each episode
+     */
+    private static double[][] playTournament(LearningAlgorithm[] trained, Environnement environnement, int episodes, boolean render){
+        if(!(environnement instanceof MultiAgentEnvironnement))
+            throw new RuntimeException("Do not support single environnemnt yet");
+
+        MultiAgentEnvironnement multiAgentEnvironnement = (MultiAgentEnvironnement) environnement;
+        double[][] rewards = new double[episodes][trained.length];
+
+        for (int episode = 0; episode < episodes; episode++) {
+            ArrayList<Agent> agents = multiAgentEnvironnement.reset(trained.length);
+            while (!multiAgentEnvironnement.isFinished()){
+                ArrayList<CarControls> carControls = new ArrayList<>();
                 for (int i = 0; i < trained.length; i++) {
-                    trainedData.put(this.settings.getLocalScopeKeys().get(i), agents.get(i).reward);
+                    carControls.add(trained[i].test(agents.get(i)));
                 }
-                episode++;
+                agents = multiAgentEnvironnement.step(carControls);
+
+                if(render)
+                    multiAgentEnvironnement.render();
             }
+
+            for (int i = 0; i < trained.length; i++) {
+                rewards[episode][i] = agents.get(i).reward;
+            }
+            multiAgentEnvironnement.newMap();
         }
-        else
-            throw new RuntimeException("Do not support single environnemnt yet");
 
-        onEnd.forEach((a) -> a.handle(this));
-        learningData.toCsv("learning");
-        trainedData.toCsv("training");
+        return rewards;
     }
 
+    /**
+     * Puts the rewards of the tournament in the training data, in the scope of each algorithm
+     *
+     * @param rewards the reward of each algorithm for each episode
+     */
+    private void putTrainedData(double[][] rewards){
+        ArrayList<String> scopes = this.settings.getLocalScopeKeys();
+        for (double[] episode : rewards) {
+            for (int i = 0; i < episode.length; i++) {
+                trainedData.put(scopes.get(i), episode[i]);
+            }
+        }
+    }
+
+    /**
+     * Trains the algorithms one after the other in the same environnement
+     *
+     * @param trained the array to put the trained algorithms in
+     */
+    private void trainSequentially(LearningAlgorithm[] trained){
+        this.environnement = generateEnvironnement();
+        this.environnement.init(this);
+
+        for (this.batchCount = 0; batchCount < trained.length; batchCount++) {
+            trained[batchCount] = trainBatch();
+        }
+    }
+
+    /**
+     * Trains up to <code>concurrentAlgorithms</code> algorithms at the same time. Each one is trained by its own learning engine.
+     *
+     * @param trained the array to put the trained algorithms in
+     * @param concurrentAlgorithms the maximum number of algorithms trained at the same time
+     */
+    private void trainConcurrently(LearningAlgorithm[] trained, int concurrentAlgorithms){
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrentAlgorithms, trained.length));
+        ArrayList<Future<LearningAlgorithm>> futures = new ArrayList<>();
+
+        this.batchEngines = new LearningEngine[trained.length];
+        for (int i = 0; i < trained.length; i++) {
+            LearningEngine batchEngine = new LearningEngine(this, i);
+            batchEngines[i] = batchEngine;
+            futures.add(executor.submit(batchEngine::trainInOwnEnvironnement));
+        }
+
+        try {
+            for (int i = 0; i < trained.length; i++) {
+                trained[i] = futures.get(i).get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("An algorithm failed while training concurrently", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        //The interface keeps showing the environnement of the first batch
+        this.environnement = batchEngines[0].environnement;
+        this.batchEngines = null;
+        this.batchCount = trained.length;
+    }
+
+    /**
+     * Creates a new environnement and trains the algorithm of this engine's batch in it
+     *
+     * @return the trained algorithm
+     */
+    private LearningAlgorithm trainInOwnEnvironnement(){
+        this.environnement = generateEnvironnement();
+        this.environnement.init(this);
+
+        return trainBatch();
+    }
+
+    /**
+     * Trains the learning algorithm of the current batch in the current environnement
+     *
+     * @return the trained algorithm
+     */
+    private LearningAlgorithm trainBatch(){
+        alive = true;
+        Console.info("Batch %s started", this.getBatchCount() + 1);
+        this.onBatchStarted.forEach(b -> b.handle(this));
+
+        learningAlgorithm = generateLearningAlgorithm();
+        learningAlgorithm.train(environnement, this);
+        alive = false;
+
+        return learningAlgorithm;
+    }
 
     /**
      * Creates a new Environnement instance depending on the one selected in the settings
@@ -147,40 +328,116 @@ public class LearningEngine implements Runnable{
     }
 
     /**
-     * Evaluate a given learning algorithm
+     * Evaluate a given learning algorithm on every test map of the environnement. If the simulation has a pool,
+     * the environnement supports it and the algorithm can be tested concurrently, the test maps are evaluated in parallel.
      *
      * @param learningAlgorithm the learning algorithm that must be tested
      */
     public void evaluate(LearningAlgorithm learningAlgorithm){
-        if(pause){
-            synchronized (lock){
-                try {
-                    paused = true;
-                    lock.wait();
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
+        waitIfPaused();
 
         int MAX = this.environnement.getNumberTestMap();
-        int episode = 0;
-        Agent agent = this.environnement.reset();
+        double[] rewards = null;
+        if(pool != null && learningAlgorithm.canBeTestedConcurrently())
+            rewards = evaluateInParallel(learningAlgorithm, MAX);
+        if(rewards == null)
+            rewards = evaluateSequentially(learningAlgorithm, MAX);
+
+        //Summed in order so that the score is the same with or without the pool
         double sum = 0;
-        while(episode < MAX){
-            while(!this.environnement.isFinished()) {
-                agent = this.environnement.step(learningAlgorithm.test(agent));
-                environnement.render();
-            }
-            sum += agent.reward;
-            episode++;
-            agent = this.environnement.reset();
+        for (double reward : rewards) {
+            sum += reward;
+        }
+        learningData.put(getCurrentScopeName(), sum/MAX);
+    }
+
+    /**
+     * Evaluates the algorithm on each test map one after the other in the environnement of this engine
+     *
+     * @param learningAlgorithm the learning algorithm that must be tested
+     * @param numberOfTestMap the number of test maps
+     * @return the reward obtained on each test map
+     */
+    private double[] evaluateSequentially(LearningAlgorithm learningAlgorithm, int numberOfTestMap){
+        double[] rewards = new double[numberOfTestMap];
+        for (int i = 0; i < numberOfTestMap; i++) {
             this.environnement.nextTestMap();
+            rewards[i] = runTestEpisode(learningAlgorithm, this.environnement, true);
         }
         this.environnement.resetTest();
-        learningData.put(getCurrentScopeName(), sum/MAX);
+
+        return rewards;
     }
 
+    /**
+     * Evaluates the algorithm on all the test maps at the same time in the pool. Each test map is run in its own environnement.
+     *
+     * @param learningAlgorithm the learning algorithm that must be tested
+     * @param numberOfTestMap the number of test maps
+     * @return the reward obtained on each test map, or null if the environnement cannot be evaluated in parallel
+     */
+    private double[] evaluateInParallel(LearningAlgorithm learningAlgorithm, int numberOfTestMap){
+        ArrayList<Callable<Double>> episodes = new ArrayList<>();
+        for (int i = 0; i < numberOfTestMap; i++) {
+            Environnement testEnvironnement = this.environnement.testEnvironnement(i);
+            if(testEnvironnement == null)
+                return null;
+
+            episodes.add(() -> runTestEpisode(learningAlgorithm, testEnvironnement, false));
+        }
+
+        double[] rewards = new double[numberOfTestMap];
+        List<Future<Double>> results = pool.invokeAll(episodes);
+        try {
+            for (int i = 0; i < numberOfTestMap; i++) {
+                rewards[i] = results.get(i).get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("The evaluation of a test map failed", e);
+        }
+
+        return rewards;
+    }
+
+    /**
+     * Runs one episode of the learning algorithm in the environnement from its reset to its end
+     *
+     * @param learningAlgorithm the learning algorithm that must be tested
+     * @param environnement the environnement to test the algorithm in
+     * @param render true if each step must be rendered to the buffer
+     * @return the final reward of the agent
+     */
+    private static double runTestEpisode(LearningAlgorithm learningAlgorithm, Environnement environnement, boolean render){
+        Agent agent = environnement.reset();
+        while(!environnement.isFinished()) {
+            agent = environnement.step(learningAlgorithm.test(agent));
+            if(render)
+                environnement.render();
+        }
+
+        return agent.reward;
+    }
+
+    /**
+     * Blocks the current thread until the simulation is resumed if it is paused.
+     * The engines training concurrently are paused by their parent.
+     */
+    private void waitIfPaused(){
+        if(parent != null){
+            parent.waitIfPaused();
+            return;
+        }
+
+        synchronized (lock){
+            while(paused){
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
 
     /**
      * The buffer used in this simulation
@@ -207,19 +464,18 @@ public class LearningEngine implements Runnable{
      * Pause the simulation
      */
     public void pause(){
-        this.pause = true;
+        synchronized (lock){
+            this.paused = true;
+        }
     }
 
     /**
      * Resume the simulation
      */
     public void resume(){
-        if(paused){
-            synchronized (lock){
-                this.pause = false;
-                lock.notifyAll();
-            }
-            paused = false;
+        synchronized (lock){
+            this.paused = false;
+            lock.notifyAll();
         }
     }
 
@@ -268,14 +524,27 @@ public class LearningEngine implements Runnable{
     }
 
     /**
-     * Gets the environnement
+     * Gets the environnement. When the algorithms are trained concurrently, it is the environnement of the first batch, the one shown in the interface
      *
      * @return the environnement
      */
     public Environnement getEnvironnement() {
+        LearningEngine[] batchEngines = this.batchEngines;
+        if(batchEngines != null)
+            return batchEngines[0].environnement;
+
         return this.environnement;
     }
 
+    /**
+     * Gets the pool shared by the parts of the simulation that can run in parallel
+     *
+     * @return the pool, or null if the simulation must run on a single thread
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
     /**
      * Gets the current scope name
      *
@@ -307,10 +576,21 @@ public class LearningEngine implements Runnable{
     }
 
     /**
-     * Goes to the next algorithm
+     * Goes to the next algorithm. When the algorithms are trained concurrently, only the first one still training is stopped
      *
      */
     public void nextAlgorithm(){
+        LearningEngine[] batchEngines = this.batchEngines;
+        if(batchEngines != null){
+            for (LearningEngine batchEngine : batchEngines) {
+                if(batchEngine.alive){
+                    batchEngine.nextAlgorithm();
+                    return;
+                }
+            }
+            return;
+        }
+
         alive = false;
     }
 
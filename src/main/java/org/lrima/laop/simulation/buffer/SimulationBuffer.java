@@ -16,6 +16,12 @@ public class SimulationBuffer  {
     private ArrayList<SimulationSnapshot> snapshots;
     private ArrayList<Action<SimulationBuffer>> bufferListeners;
 
+    /**
+     * Number of steps between two snapshots. With 1 every step is kept, with 0 or less no step is kept
+     */
+    private int captureInterval = 1;
+    private int stepsUntilCapture = 0;
+
     /**
      * Creates a new Buffer
      */
@@ -35,6 +41,33 @@ public class SimulationBuffer  {
         this.bufferListeners.forEach(snapshotAction -> snapshotAction.handle(this));
     }
 
+    /**
+     * Called by the environnement at each step before creating its snapshot, so that no snapshot is built for the steps that are not kept
+     *
+     * @return true if the snapshot of this step must be added to the buffer, false otherwise
+     */
+    public boolean isCapturingStep() {
+        if(captureInterval <= 0)
+            return false;
+
+        if(stepsUntilCapture > 0){
+            stepsUntilCapture--;
+            return false;
+        }
+
+        stepsUntilCapture = captureInterval - 1;
+        return true;
+    }
+
+    /**
+     * Sets the number of steps between two snapshots. With 1 every step is kept, with 0 no step is kept
+     *
+     * @param captureInterval the number of steps between two snapshots
+     */
+    public void setCaptureInterval(int captureInterval) {
+        this.captureInterval = captureInterval;
+    }
+
     /**
      * Set a new Action when a snapshot is added to the buffer
      */
@@ -68,5 +101,6 @@ public class SimulationBuffer  {
      */
     public void clear() {
         snapshots = new ArrayList<>();
+        stepsUntilCapture = 0;
     }
 }
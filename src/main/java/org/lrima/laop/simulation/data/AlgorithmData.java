@@ -9,7 +9,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.function.Consumer;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
 /**
@@ -19,7 +19,7 @@ import java.util.stream.Collectors;
 public class AlgorithmData extends ArrayList<ArrayList<Double>> {
     private Date start = new Date();
     private HashMap<String, ArrayList<Double>> values = new HashMap<>();
-    private Consumer<String> valueAdded;
+    private BiConsumer<String, ArrayList<Double>> valueAdded;
 
     /**
      * Export the data to a csv file for better inspection
@@ -49,16 +49,22 @@ public class AlgorithmData extends ArrayList<ArrayList<Double>> {
     }
 
     /**
-     * Add data to the algorithmData
+     * Add data to the algorithmData. The algorithms can be trained concurrently, each one in its own scope, so the values are added under a lock
+     * and the listener receives a copy of the values of the scope, outside of the lock
      *
      * @param scope the scope to add it to
      * @param data the data
      */
     public void put(String scope, Double data){
-        values.computeIfAbsent(scope, k -> new ArrayList<>());
-        this.values.get(scope).add(data);
+        ArrayList<Double> scopeValues;
+        synchronized (this) {
+            values.computeIfAbsent(scope, k -> new ArrayList<>());
+            this.values.get(scope).add(data);
+            scopeValues = new ArrayList<>(this.values.get(scope));
+        }
+
         if(valueAdded != null)
-            valueAdded.accept(scope);
+            valueAdded.accept(scope, scopeValues);
     }
 
     /**
@@ -71,11 +77,11 @@ public class AlgorithmData extends ArrayList<ArrayList<Double>> {
     }
 
     /**
-     * Adds a listener that is called each time a data is added
+     * Adds a listener that is called each time a data is added. It can be called by the thread of any algorithm
      *
-     * @param stringConsumer the consumer to call. The string value in the consumer is the key
+     * @param valuesConsumer the consumer to call with the key and a copy of all the values of the key
      */
-    public void setOnAddValue(Consumer<String> stringConsumer){
-        this.valueAdded = stringConsumer;
+    public void setOnAddValue(BiConsumer<String, ArrayList<Double>> valuesConsumer){
+        this.valueAdded = valuesConsumer;
     }
 }
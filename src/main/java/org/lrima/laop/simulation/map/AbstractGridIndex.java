@@ -0,0 +1,223 @@
+package org.lrima.laop.simulation.map;
+
+import org.lrima.laop.physic.SimpleCar;
+
+/**
+ * Regular grid of lines shared by {@link GridIndex} and {@link MappedGridIndex}. It walks the cells of the queries and of the rays,
+ * and the subclasses only give access to the entries of the cells, wherever they are stored. <br/><br/>
+ *
+ * A line is put in every cell touched by its bounds. It is only given to a LineCollidable in the first cell shared by the line and the query,
+ * so the queries do not need to remember the lines they already visited and can be made by many threads at the same time.
+ *
+ * @author Léonard
+ */
+abstract class AbstractGridIndex implements LineIndex {
+    //Package-private so that the grid can be saved in a MapFile
+    final float minX, minY, maxX, maxY;
+    final float cellSize;
+    final int cellsX, cellsY;
+
+    /**
+     * Creates a grid
+     *
+     * @param minX the x coordinate of the first point forming the bound
+     * @param minY the y coordinate of the first point forming the bound
+     * @param maxX the x coordinate of the second point forming the bound
+     * @param maxY the y coordinate of the second point forming the bound
+     * @param cellSize the width of a cell of the grid
+     * @param cellsX the number of columns
+     * @param cellsY the number of rows
+     */
+    AbstractGridIndex(float minX, float minY, float maxX, float maxY, float cellSize, int cellsX, int cellsY) {
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.cellSize = cellSize;
+        this.cellsX = cellsX;
+        this.cellsY = cellsY;
+    }
+
+    /**
+     * Gets the first entry of a cell. The entries of cell i are cellStart(i) to cellStart(i + 1)
+     *
+     * @param cell the index of the cell, or the number of cells for the end of the last cell
+     * @return the index of the first entry
+     */
+    abstract int cellStart(int cell);
+
+    /**
+     * @param entry the index of the entry
+     * @return the column of the first cell touched by the bounds of the line of the entry
+     */
+    abstract int lineCellX(int entry);
+
+    /**
+     * @param entry the index of the entry
+     * @return the row of the first cell touched by the bounds of the line of the entry
+     */
+    abstract int lineCellY(int entry);
+
+    /**
+     * Gives the line of an entry to a LineCollidable. The fitness walls are only given to the cars
+     *
+     * @param lineCollidable the LineCollidable
+     * @param entry the index of the entry
+     * @param isCar true if the LineCollidable is a {@link SimpleCar}
+     */
+    abstract void collide(LineCollidable lineCollidable, int entry, boolean isCar);
+
+    /**
+     * Finds where a ray touches the line of an entry. The fitness walls are never touched
+     *
+     * @param entry the index of the entry
+     * @param x1 the x coordinate of the first point of the ray
+     * @param y1 the y coordinate of the first point of the ray
+     * @param x2 the x coordinate of the second point of the ray
+     * @param y2 the y coordinate of the second point of the ray
+     * @return the position of the intersection on the ray, between 0 and 1, or a negative value if the ray does not touch the line
+     */
+    abstract float intersect(int entry, float x1, float y1, float x2, float y2);
+
+    @Override
+    public void collide(LineCollidable lineCollidable) {
+        int fromX = cellX(Math.min(lineCollidable.getX1(), lineCollidable.getX2()));
+        int toX = cellX(Math.max(lineCollidable.getX1(), lineCollidable.getX2()));
+        int fromY = cellY(Math.min(lineCollidable.getY1(), lineCollidable.getY2()));
+        int toY = cellY(Math.max(lineCollidable.getY1(), lineCollidable.getY2()));
+        boolean isCar = lineCollidable instanceof SimpleCar;
+
+        for (int y = fromY; y <= toY; y++) {
+            for (int x = fromX; x <= toX; x++) {
+                int cell = y * cellsX + x;
+
+                for (int i = cellStart(cell); i < cellStart(cell + 1); i++) {
+                    //Only the first cell shared by the line and the query gives the line
+                    if(Math.max(lineCellX(i), fromX) != x || Math.max(lineCellY(i), fromY) != y) continue;
+
+                    collide(lineCollidable, i, isCar);
+                }
+            }
+        }
+    }
+
+    /**
+     * Walks the cells crossed by each ray in order (DDA) and stops at the first cell containing a wall touched by the ray.
+     * The rays starting outside of the grid test all the cells under their bounds.
+     */
+    @Override
+    public void castRays(float[] rays, int from, int to, float[] distances) {
+        for (int ray = from; ray < to; ray++) {
+            float x1 = rays[ray * 4], y1 = rays[ray * 4 + 1], x2 = rays[ray * 4 + 2], y2 = rays[ray * 4 + 3];
+
+            if(x1 < minX || x1 > maxX || y1 < minY || y1 > maxY){
+                distances[ray] = castInBounds(rays, ray);
+                continue;
+            }
+
+            float dx = x2 - x1, dy = y2 - y1;
+            int x = cellX(x1), y = cellY(y1);
+            int stepX = dx > 0 ? 1 : -1;
+            int stepY = dy > 0 ? 1 : -1;
+
+            //Position on the ray where it leaves the column and the row of the current cell, and between two columns and two rows
+            float nextX = dx == 0 ? Float.POSITIVE_INFINITY : (minX + (x + (dx > 0 ? 1 : 0)) * cellSize - x1) / dx;
+            float nextY = dy == 0 ? Float.POSITIVE_INFINITY : (minY + (y + (dy > 0 ? 1 : 0)) * cellSize - y1) / dy;
+            float deltaX = dx == 0 ? Float.POSITIVE_INFINITY : cellSize / Math.abs(dx);
+            float deltaY = dy == 0 ? Float.POSITIVE_INFINITY : cellSize / Math.abs(dy);
+
+            float nearest = Float.POSITIVE_INFINITY;
+            float distance = Float.POSITIVE_INFINITY;
+            while (true) {
+                float t = nearestInCell(y * cellsX + x, x1, y1, x2, y2);
+                if(t >= 0 && t < nearest){
+                    nearest = t;
+                    distance = LineIndex.distanceOnRay(rays, ray, t);
+                }
+
+                //The walls of the next cells are further than the exit of this cell
+                float exit = Math.min(nextX, nextY);
+                if(nearest <= exit || exit > 1) break;
+
+                if(nextX < nextY){
+                    x += stepX;
+                    nextX += deltaX;
+                }
+                else{
+                    y += stepY;
+                    nextY += deltaY;
+                }
+
+                if(x < 0 || x >= cellsX || y < 0 || y >= cellsY) break;
+            }
+
+            distances[ray] = distance;
+        }
+    }
+
+    /**
+     * Gets the distance to the nearest wall touched by a ray by testing all the walls of the cells under the bounds of the ray
+     *
+     * @param rays the packed rays
+     * @param ray the index of the ray
+     * @return the distance to the nearest wall, infinity if the ray touches no wall
+     */
+    private float castInBounds(float[] rays, int ray){
+        float x1 = rays[ray * 4], y1 = rays[ray * 4 + 1], x2 = rays[ray * 4 + 2], y2 = rays[ray * 4 + 3];
+        float distance = Float.POSITIVE_INFINITY;
+
+        for (int y = cellY(Math.min(y1, y2)); y <= cellY(Math.max(y1, y2)); y++) {
+            for (int x = cellX(Math.min(x1, x2)); x <= cellX(Math.max(x1, x2)); x++) {
+                float t = nearestInCell(y * cellsX + x, x1, y1, x2, y2);
+                if(t >= 0){
+                    distance = Math.min(distance, LineIndex.distanceOnRay(rays, ray, t));
+                }
+            }
+        }
+
+        return distance;
+    }
+
+    /**
+     * Finds the nearest wall of a cell touched by a ray. The fitness walls are ignored
+     *
+     * @param cell the index of the cell
+     * @param x1 the x coordinate of the first point of the ray
+     * @param y1 the y coordinate of the first point of the ray
+     * @param x2 the x coordinate of the second point of the ray
+     * @param y2 the y coordinate of the second point of the ray
+     * @return the position of the intersection on the ray, between 0 and 1, or -1 if the ray touches no wall of the cell
+     */
+    private float nearestInCell(int cell, float x1, float y1, float x2, float y2){
+        float nearest = -1;
+
+        for (int i = cellStart(cell); i < cellStart(cell + 1); i++) {
+            float t = intersect(i, x1, y1, x2, y2);
+            if(t >= 0 && (nearest < 0 || t < nearest)){
+                nearest = t;
+            }
+        }
+
+        return nearest;
+    }
+
+    /**
+     * Gets the column of the grid containing the x coordinate. The coordinates outside of the grid are put in the nearest column
+     *
+     * @param x the x coordinate
+     * @return the column
+     */
+    int cellX(float x){
+        return Math.min(Math.max((int) Math.floor((x - minX) / cellSize), 0), cellsX - 1);
+    }
+
+    /**
+     * Gets the row of the grid containing the y coordinate. The coordinates outside of the grid are put in the nearest row
+     *
+     * @param y the y coordinate
+     * @return the row
+     */
+    int cellY(float y){
+        return Math.min(Math.max((int) Math.floor((y - minY) / cellSize), 0), cellsY - 1);
+    }
+}
@@ -12,7 +12,8 @@ import org.lrima.laop.physic.staticobjects.StaticLineObject;
  */
 public abstract class AbstractMap {
 	ArrayList<StaticLineObject> lines;
-	Quadtree quadtree;
+	LineIndex lineIndex;
+	private int numberOfFitnessWalls;
 
 	/**
 	 * Initiate a map by reseting its array of lines
@@ -20,13 +21,52 @@ public abstract class AbstractMap {
 	public AbstractMap() {
 		this.lines = new ArrayList<>();
 	}
+
+	/**
+	 * Initiate a map with lines that are already indexed
+	 *
+	 * @param lines the lines of the map
+	 * @param numberOfFitnessWalls the number of fitness walls in the lines
+	 * @param lineIndex the index of the lines
+	 */
+	AbstractMap(ArrayList<StaticLineObject> lines, int numberOfFitnessWalls, LineIndex lineIndex) {
+		this.lines = lines;
+		this.numberOfFitnessWalls = numberOfFitnessWalls;
+		this.lineIndex = lineIndex;
+	}
 	
+	/**
+	 * Adds a fitness wall to the map. The walls are numbered in the order they are added
+	 *
+	 * @param x1 The x value of the first coordinate
+	 * @param y1 The y value of the first coordinate
+	 * @param x2 The x value of the second coordinate
+	 * @param y2 The y value of the second coordinate
+	 */
+	protected void addFitnessWall(float x1, float y1, float x2, float y2){
+		lines.add(new FitnessWallObject(x1, y1, x2, y2, numberOfFitnessWalls++));
+	}
+
+	/**
+	 * @return the number of fitness walls of the map
+	 */
+	public int getNumberOfFitnessWalls() {
+		return numberOfFitnessWalls;
+	}
+
+	/**
+	 * @return true if the lines of the map are already indexed
+	 */
+	public boolean isBaked() {
+		return lineIndex != null;
+	}
+
 	/**
 	 * Converts the lines of the map to multiple areas containing the same type of lines
 	 */
 	public void bake(){
 		if(lines.size() == 0){
-		    quadtree = new Quadtree(0, 0, 0, 1, 1);
+		    lineIndex = new Quadtree(0, 0, 0, 1, 1);
 		    return;
         }
 
@@ -47,25 +87,62 @@ public abstract class AbstractMap {
 			miny = Math.min(miny, line.getY2());
 		}
 
-		quadtree = new Quadtree(0, minx, miny, maxx, maxy);
+		lineIndex = createLineIndex(minx, miny, maxx, maxy);
+	}
+
+	/**
+	 * Creates the index used to find the lines that can collide with a LineCollidable. By default the lines are put in a quadtree
+	 * that is then packed into a read-only {@link CompiledQuadtree}, since the lines do not move after the bake.
+	 * Maps made of regular squares should use a {@link GridIndex}
+	 *
+	 * @param minx the x coordinate of the first point forming the bound of the lines
+	 * @param miny the y coordinate of the first point forming the bound of the lines
+	 * @param maxx the x coordinate of the second point forming the bound of the lines
+	 * @param maxy the y coordinate of the second point forming the bound of the lines
+	 * @return the index containing all the lines of the map
+	 */
+	protected LineIndex createLineIndex(float minx, float miny, float maxx, float maxy){
+		Quadtree quadtree = new Quadtree(0, minx, miny, maxx, maxy);
 		for (StaticLineObject line : lines) {
 			quadtree.insert(line);
 		}
+
+		return new CompiledQuadtree(quadtree);
 	}
 
 	/**
-	 * Tell the quadtree that a line collided with the map
+	 * Tell the line index that a line collided with the map
 	 * @param lineCollidable the line that collided with the map
 	 */
 	public void collide(LineCollidable lineCollidable){
 		lineCollidable.bake();
-		quadtree.collide(lineCollidable);
+		lineIndex.collide(lineCollidable);
+	}
+
+	/**
+	 * Finds the distance to the nearest wall of each ray
+	 *
+	 * @param rays the rays, four values per ray: x1, y1, x2, y2
+	 * @param from the index of the first ray
+	 * @param to the index after the last ray
+	 * @param distances the distance of each ray to its nearest wall, infinity if it touches no wall
+	 * @see LineIndex#castRays(float[], int, int, float[])
+	 */
+	public void castRays(float[] rays, int from, int to, float[] distances){
+		lineIndex.castRays(rays, from, to, distances);
 	}
 	
 	/**
      * @return the starting point of the cars
      */
 	abstract public Point2D getStartPoint();
+
+	/**
+	 * @return the starting orientation of the cars, in radians
+	 */
+	public double getStartingOrientation() {
+		return 0;
+	}
 	
 	/**
 	 * Get the distance from a certain point and the start
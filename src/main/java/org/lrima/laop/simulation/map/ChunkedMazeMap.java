@@ -0,0 +1,389 @@
+package org.lrima.laop.simulation.map;
+
+import javafx.scene.canvas.GraphicsContext;
+import org.lrima.laop.physic.SimpleCar;
+import org.lrima.laop.physic.staticobjects.StaticLineObject;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Maze divided in square chunks that are only generated when a car or a sensor gets near them, for mazes too large to be kept in memory. <br/><br/>
+ *
+ * Each chunk is a maze of its own, generated like a {@link MazeMap} from the seed of the map and the position of the chunk,
+ * and each chunk has one opening to the chunk on its left and one to the chunk above it, so the whole maze is connected.
+ * A chunk is indexed by a {@link GridIndex} when it is generated. Only the last used chunks are kept: when there are too many,
+ * the chunk used the longest time ago is removed, and it is generated again the same way if it is needed later. <br/>
+ * The walls of a chunk are its north and west sides and the walls inside it, so each wall is in only one chunk.
+ * Like in a MazeMap, the progress of the cars is followed with the cells they enter.
+ *
+ * @author Léonard
+ */
+public class ChunkedMazeMap extends AbstractMap {
+    /** Number of chunks kept in memory by default */
+    public static final int DEFAULT_MAX_LOADED_CHUNKS = 64;
+
+    private static final int MAP_SQUARE_WIDTH = MazeMap.MAP_SQUARE_WIDTH;
+
+    private final int numberOfSquares;
+    private final int chunkSize;
+    private final int numberOfChunks;
+    private final long seed;
+    private final double orientation;
+
+    //Ordered from the least to the most recently used
+    private final LinkedHashMap<Long, Chunk> loadedChunks;
+
+    /**
+     * Creates a chunked maze with a random seed
+     *
+     * @param numberOfSquares the number of squares in the x and y directions
+     * @param chunkSize the number of squares of a chunk in the x and y directions
+     */
+    public ChunkedMazeMap(int numberOfSquares, int chunkSize) {
+        this(numberOfSquares, chunkSize, ThreadLocalRandom.current().nextLong(), DEFAULT_MAX_LOADED_CHUNKS);
+    }
+
+    /**
+     * Creates a chunked maze. Only the chunk containing the starting point is generated
+     *
+     * @param numberOfSquares the number of squares in the x and y directions
+     * @param chunkSize the number of squares of a chunk in the x and y directions
+     * @param seed the seed of the maze
+     * @param maxLoadedChunks the number of chunks kept in memory
+     */
+    public ChunkedMazeMap(int numberOfSquares, int chunkSize, long seed, int maxLoadedChunks) {
+        super();
+        if(numberOfSquares <= 0 || chunkSize <= 0 || maxLoadedChunks <= 0)
+            throw new IllegalArgumentException("The size of the maze, the size of the chunks and the number of loaded chunks must be positive");
+        //The cells of the maze are numbered with an int
+        if((long) numberOfSquares * numberOfSquares > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("The maze is too large: " + numberOfSquares + " squares");
+
+        this.numberOfSquares = numberOfSquares;
+        this.chunkSize = chunkSize;
+        this.numberOfChunks = (numberOfSquares + chunkSize - 1) / chunkSize;
+        this.seed = seed;
+        this.loadedChunks = new LinkedHashMap<Long, Chunk>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Chunk> eldest) {
+                return size() > maxLoadedChunks;
+            }
+        };
+        this.lineIndex = new ChunkIndex();
+
+        //Same orientation as a MazeMap for the first square
+        Chunk first = chunk(0, 0);
+        this.orientation = first.height == 1 || !first.southOpen[0] ? -Math.PI / 2 : 0;
+    }
+
+    /**
+     * The chunks are indexed when they are generated
+     */
+    @Override
+    public void bake() {}
+
+    /**
+     * Gets a chunk, and generates it if it is not loaded. The chunk becomes the most recently used
+     *
+     * @param chunkX the column of the chunk
+     * @param chunkY the row of the chunk
+     * @return the chunk
+     */
+    private Chunk chunk(int chunkX, int chunkY) {
+        long key = ((long) chunkX << 32) | chunkY;
+
+        Chunk chunk;
+        synchronized (loadedChunks) {
+            chunk = loadedChunks.get(key);
+        }
+        if(chunk != null)
+            return chunk;
+
+        //Generated without the lock so the other threads can use the loaded chunks. Two threads can generate the same chunk, they get the same walls
+        chunk = new Chunk(chunkX, chunkY);
+        synchronized (loadedChunks) {
+            Chunk loaded = loadedChunks.get(key);
+            if(loaded != null)
+                return loaded;
+
+            loadedChunks.put(key, chunk);
+        }
+
+        return chunk;
+    }
+
+    /**
+     * Gets the column of the chunks containing the x coordinate. The coordinates outside of the maze are put in the nearest column
+     *
+     * @param x the x coordinate
+     * @return the column
+     */
+    private int chunkOf(float x) {
+        return Math.min(Math.max((int) Math.floor(x / (chunkSize * MAP_SQUARE_WIDTH)), 0), numberOfChunks - 1);
+    }
+
+    /**
+     * Collides the car with the walls and tells it which cell of the maze contains its center, like in a {@link MazeMap}
+     *
+     * @param lineCollidable the line that collided with the map
+     */
+    @Override
+    public void collide(LineCollidable lineCollidable) {
+        super.collide(lineCollidable);
+
+        if(lineCollidable instanceof SimpleCar){
+            SimpleCar car = (SimpleCar) lineCollidable;
+            int x = (int) Math.floor(car.getCenterX() / MAP_SQUARE_WIDTH);
+            int y = (int) Math.floor(car.getCenterY() / MAP_SQUARE_WIDTH);
+
+            if(x >= 0 && x < numberOfSquares && y >= 0 && y < numberOfSquares)
+                car.enterCell(y * numberOfSquares + x);
+        }
+    }
+
+    @Override
+    public Point2D getStartPoint() {
+        return new Point2D.Double(MAP_SQUARE_WIDTH / 2.0, 10);
+    }
+
+    @Override
+    public double getStartingOrientation() {
+        return orientation;
+    }
+
+    /**
+     * @return the seed of the maze
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return the number of squares in the x and y directions
+     */
+    public int getNumberOfSquares() {
+        return numberOfSquares;
+    }
+
+    /**
+     * @return the number of chunks in memory
+     */
+    public int getNumberOfLoadedChunks() {
+        synchronized (loadedChunks) {
+            return loadedChunks.size();
+        }
+    }
+
+    /**
+     * Draws the walls of the chunks in memory
+     *
+     * @param gc the graphical context to draw to
+     */
+    @Override
+    public void draw(GraphicsContext gc) {
+        ArrayList<Chunk> chunks;
+        synchronized (loadedChunks) {
+            chunks = new ArrayList<>(loadedChunks.values());
+        }
+
+        for (Chunk chunk : chunks) {
+            chunk.walls.forEach(wall -> wall.draw(gc));
+        }
+    }
+
+    /**
+     * Gives the queries to the grids of the chunks under their bounds
+     */
+    private class ChunkIndex implements LineIndex {
+        @Override
+        public void collide(LineCollidable lineCollidable) {
+            int fromX = chunkOf(Math.min(lineCollidable.getX1(), lineCollidable.getX2()));
+            int toX = chunkOf(Math.max(lineCollidable.getX1(), lineCollidable.getX2()));
+            int fromY = chunkOf(Math.min(lineCollidable.getY1(), lineCollidable.getY2()));
+            int toY = chunkOf(Math.max(lineCollidable.getY1(), lineCollidable.getY2()));
+
+            for (int y = fromY; y <= toY; y++) {
+                for (int x = fromX; x <= toX; x++) {
+                    chunk(x, y).index.collide(lineCollidable);
+                }
+            }
+        }
+
+        @Override
+        public void castRays(float[] rays, int from, int to, float[] distances) {
+            for (int ray = from; ray < to; ray++) {
+                float x1 = rays[ray * 4], y1 = rays[ray * 4 + 1], x2 = rays[ray * 4 + 2], y2 = rays[ray * 4 + 3];
+                int fromX = chunkOf(Math.min(x1, x2)), toX = chunkOf(Math.max(x1, x2));
+                int fromY = chunkOf(Math.min(y1, y2)), toY = chunkOf(Math.max(y1, y2));
+
+                //Most rays are in one chunk
+                float distance = Float.POSITIVE_INFINITY;
+                for (int y = fromY; y <= toY; y++) {
+                    for (int x = fromX; x <= toX; x++) {
+                        chunk(x, y).index.castRays(rays, ray, ray + 1, distances);
+                        distance = Math.min(distance, distances[ray]);
+                    }
+                }
+
+                distances[ray] = distance;
+            }
+        }
+    }
+
+    /**
+     * Square part of the maze, with its walls indexed in a grid. A chunk is not modified after it is generated
+     */
+    private class Chunk {
+        //Position of the first square of the chunk
+        private final int squareX, squareY;
+        //Number of squares of the chunk, smaller for the last chunks if the size of the maze is not a multiple of the size of the chunks
+        private final int width, height;
+
+        //Openings between each square and the square on its right and the square under it
+        private final boolean[] eastOpen;
+        private final boolean[] southOpen;
+
+        private final ArrayList<StaticLineObject> walls;
+        private final GridIndex index;
+
+        /**
+         * Generates a chunk
+         *
+         * @param chunkX the column of the chunk
+         * @param chunkY the row of the chunk
+         */
+        Chunk(int chunkX, int chunkY) {
+            this.squareX = chunkX * chunkSize;
+            this.squareY = chunkY * chunkSize;
+            this.width = Math.min(chunkSize, numberOfSquares - squareX);
+            this.height = Math.min(chunkSize, numberOfSquares - squareY);
+            this.eastOpen = new boolean[width * height];
+            this.southOpen = new boolean[width * height];
+
+            SplittableRandom random = new SplittableRandom(seed ^ (chunkX * 0x9E3779B97F4A7C15L) ^ (chunkY * 0xC2B2AE3D27D4EB4FL));
+            generate(random);
+
+            //Openings to the chunks on the left and above, none on the sides of the maze
+            int westOpening = chunkX == 0 ? -1 : random.nextInt(height);
+            int northOpening = chunkY == 0 ? -1 : random.nextInt(width);
+
+            this.walls = new ArrayList<>();
+            createWalls(westOpening, northOpening, chunkX == numberOfChunks - 1, chunkY == numberOfChunks - 1);
+
+            float minX = squareX * MAP_SQUARE_WIDTH, minY = squareY * MAP_SQUARE_WIDTH;
+            this.index = new GridIndex(walls, MAP_SQUARE_WIDTH, minX, minY, minX + width * MAP_SQUARE_WIDTH, minY + height * MAP_SQUARE_WIDTH);
+        }
+
+        /**
+         * Generates the maze of the chunk like {@link MazeMap}, with a stack of squares
+         *
+         * @param random the random generator of the chunk
+         */
+        private void generate(SplittableRandom random) {
+            boolean[] visited = new boolean[width * height];
+            int[] stack = new int[width * height];
+            int[] neighbors = new int[4];
+            int top = 0;
+
+            visited[0] = true;
+            stack[top++] = 0;
+
+            while(top > 0) {
+                int square = stack[top - 1];
+                int x = square % width;
+                int y = square / width;
+
+                //Directions of the unvisited neighbors: 0 right, 1 left, 2 top, 3 bottom
+                int count = 0;
+                if(x + 1 < width && !visited[square + 1]) neighbors[count++] = 0;
+                if(x > 0 && !visited[square - 1]) neighbors[count++] = 1;
+                if(y > 0 && !visited[square - width]) neighbors[count++] = 2;
+                if(y + 1 < height && !visited[square + width]) neighbors[count++] = 3;
+
+                if(count == 0) {
+                    top--;
+                    continue;
+                }
+
+                int neighbor = neighbors[random.nextInt(count)];
+                int next;
+                if(neighbor == 0) {
+                    eastOpen[square] = true;
+                    next = square + 1;
+                }
+                else if(neighbor == 1) {
+                    eastOpen[square - 1] = true;
+                    next = square - 1;
+                }
+                else if(neighbor == 2) {
+                    southOpen[square - width] = true;
+                    next = square - width;
+                }
+                else {
+                    southOpen[square] = true;
+                    next = square + width;
+                }
+
+                visited[next] = true;
+                stack[top++] = next;
+            }
+        }
+
+        /**
+         * Creates the walls of the chunk. The walls following each other on the same line are merged into one line
+         *
+         * @param westOpening the row of the opening in the west side, -1 if there is none
+         * @param northOpening the column of the opening in the north side, -1 if there is none
+         * @param eastSide true if the east side of the chunk is a side of the maze
+         * @param southSide true if the south side of the chunk is a side of the maze
+         */
+        private void createWalls(int westOpening, int northOpening, boolean eastSide, boolean southSide) {
+            //Horizontal lines: the north side of each row, and the south side of the last row if it is the side of the maze
+            for (int row = 0; row <= (southSide ? height : height - 1); row++) {
+                int start = -1;
+                for (int x = 0; x <= width; x++) {
+                    boolean wall;
+                    if(x == width) wall = false;
+                    else if(row == 0) wall = x != northOpening;
+                    else if(row == height) wall = true;
+                    else wall = !southOpen[(row - 1) * width + x];
+
+                    if(wall && start == -1) {
+                        start = x;
+                    }
+                    else if(!wall && start != -1) {
+                        float lineY = (squareY + row) * MAP_SQUARE_WIDTH;
+                        walls.add(new StaticLineObject((squareX + start) * MAP_SQUARE_WIDTH, lineY, (squareX + x) * MAP_SQUARE_WIDTH, lineY));
+                        start = -1;
+                    }
+                }
+            }
+
+            //Vertical lines: the west side of each column, and the east side of the last column if it is the side of the maze
+            for (int column = 0; column <= (eastSide ? width : width - 1); column++) {
+                int start = -1;
+                for (int y = 0; y <= height; y++) {
+                    boolean wall;
+                    if(y == height) wall = false;
+                    else if(column == 0) wall = y != westOpening;
+                    else if(column == width) wall = true;
+                    else wall = !eastOpen[y * width + column - 1];
+
+                    if(wall && start == -1) {
+                        start = y;
+                    }
+                    else if(!wall && start != -1) {
+                        float lineX = (squareX + column) * MAP_SQUARE_WIDTH;
+                        walls.add(new StaticLineObject(lineX, (squareY + start) * MAP_SQUARE_WIDTH, lineX, (squareY + y) * MAP_SQUARE_WIDTH));
+                        start = -1;
+                    }
+                }
+            }
+        }
+    }
+}
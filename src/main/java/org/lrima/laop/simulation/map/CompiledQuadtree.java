@@ -0,0 +1,200 @@
+package org.lrima.laop.simulation.map;
+
+import org.lrima.laop.physic.SimpleCar;
+import org.lrima.laop.physic.staticobjects.FitnessWallObject;
+import org.lrima.laop.physic.staticobjects.StaticLineObject;
+import org.lrima.laop.utils.MathUtils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+/**
+ * Read-only copy of a {@link Quadtree} packed into arrays. The nodes are numbered in breadth-first order so that the four children
+ * of a node follow each other, and the lines of each node are contiguous. The queries walk the nodes with a stack instead of recursion
+ * and do not allocate, so they visit the lines in the same order as the Quadtree.
+ *
+ * @author Léonard
+ */
+public class CompiledQuadtree implements LineIndex {
+    private final float[] midX, midY;
+    //Index of the first of the four children of each node, -1 if the node is not splitted
+    private final int[] firstChild;
+    //The lines of node i are at the indexes lineStart[i] to lineStart[i + 1]
+    private final int[] lineStart;
+    private final StaticLineObject[] lines;
+    private final boolean[] fitness;
+
+    private final ThreadLocal<int[]> stacks;
+
+    /**
+     * Packs the quadtree
+     *
+     * @param root the root of the quadtree
+     */
+    public CompiledQuadtree(Quadtree root) {
+        //Number the nodes in breadth-first order
+        ArrayDeque<Quadtree> queue = new ArrayDeque<>();
+        ArrayList<Quadtree> order = new ArrayList<>();
+        ArrayList<Integer> depths = new ArrayList<>();
+        queue.add(root);
+        int numberOfLines = 0;
+        int maxDepth = 0;
+        depths.add(0);
+        while (!queue.isEmpty()) {
+            Quadtree node = queue.poll();
+            int depth = depths.get(order.size());
+            maxDepth = Math.max(maxDepth, depth);
+            order.add(node);
+            numberOfLines += node.lines.size();
+
+            if(node.nodes != null){
+                for (Quadtree child : node.nodes) {
+                    queue.add(child);
+                    depths.add(depth + 1);
+                }
+            }
+        }
+
+        int numberOfNodes = order.size();
+        this.midX = new float[numberOfNodes];
+        this.midY = new float[numberOfNodes];
+        this.firstChild = new int[numberOfNodes];
+        this.lineStart = new int[numberOfNodes + 1];
+        this.lines = new StaticLineObject[numberOfLines];
+        this.fitness = new boolean[numberOfLines];
+
+        int nextChild = 1;
+        int line = 0;
+        for (int i = 0; i < numberOfNodes; i++) {
+            Quadtree node = order.get(i);
+            midX[i] = node.midX;
+            midY[i] = node.midY;
+
+            if(node.nodes != null){
+                firstChild[i] = nextChild;
+                nextChild += 4;
+            }
+            else firstChild[i] = -1;
+
+            lineStart[i] = line;
+            for (StaticLineObject staticLine : node.lines) {
+                lines[line] = staticLine;
+                fitness[line] = staticLine instanceof FitnessWallObject;
+                line++;
+            }
+        }
+        lineStart[numberOfNodes] = line;
+
+        //At most three siblings wait on the stack for each level, plus the node being visited
+        int stackSize = 3 * maxDepth + 1;
+        this.stacks = ThreadLocal.withInitial(() -> new int[stackSize]);
+    }
+
+    @Override
+    public void collide(LineCollidable lineCollidable) {
+        int[] stack = stacks.get();
+        int size = 0;
+        stack[size++] = 0;
+
+        boolean isCar = lineCollidable instanceof SimpleCar;
+        float x1 = lineCollidable.getX1(), y1 = lineCollidable.getY1();
+        float x2 = lineCollidable.getX2(), y2 = lineCollidable.getY2();
+
+        while (size > 0) {
+            int node = stack[--size];
+
+            for (int i = lineStart[node]; i < lineStart[node + 1]; i++) {
+                if(!fitness[i]) {
+                    lineCollidable.collide(lines[i]);
+                }else if(isCar){
+                    lineCollidable.collideFitnessAdder((FitnessWallObject) lines[i]);
+                }
+            }
+
+            size = pushChildren(stack, size, node, x1, y1, x2, y2);
+        }
+    }
+
+    @Override
+    public void castRays(float[] rays, int from, int to, float[] distances) {
+        int[] stack = stacks.get();
+
+        for (int ray = from; ray < to; ray++) {
+            float x1 = rays[ray * 4], y1 = rays[ray * 4 + 1], x2 = rays[ray * 4 + 2], y2 = rays[ray * 4 + 3];
+            float distance = Float.POSITIVE_INFINITY;
+
+            int size = 0;
+            stack[size++] = 0;
+            while (size > 0) {
+                int node = stack[--size];
+
+                for (int i = lineStart[node]; i < lineStart[node + 1]; i++) {
+                    if(fitness[i]) continue;
+
+                    StaticLineObject line = lines[i];
+                    float t = MathUtils.segmentIntersectionParameter(x1, y1, x2, y2, line.getX1(), line.getY1(), line.getX2(), line.getY2());
+                    if(t >= 0){
+                        distance = Math.min(distance, LineIndex.distanceOnRay(rays, ray, t));
+                    }
+                }
+
+                size = pushChildren(stack, size, node, x1, y1, x2, y2);
+            }
+
+            distances[ray] = distance;
+        }
+    }
+
+    /**
+     * Pushes the children of a node that can contain lines touching the bounds. Same children as Quadtree#getLineIndexAll,
+     * pushed in reverse order so they are visited in the same order
+     *
+     * @param stack the stack of the nodes to visit
+     * @param size the size of the stack
+     * @param node the node
+     * @param x1 the x coordinate of the first point forming the bound
+     * @param y1 the y coordinate of the first point forming the bound
+     * @param x2 the x coordinate of the second point forming the bound
+     * @param y2 the y coordinate of the second point forming the bound
+     * @return the new size of the stack
+     */
+    private int pushChildren(int[] stack, int size, int node, float x1, float y1, float x2, float y2){
+        int child = firstChild[node];
+        if(child == -1) return size;
+
+        int i1 = checkIndex(node, x1, y1);
+        int i2 = checkIndex(node, x2, y2);
+        if(i1 == i2){
+            stack[size++] = child + i1;
+        }
+        else if(i1 + i2 == 3){
+            stack[size++] = child + 3;
+            stack[size++] = child + 2;
+            stack[size++] = child + 1;
+            stack[size++] = child;
+        }
+        else{
+            stack[size++] = child + i2;
+            stack[size++] = child + i1;
+        }
+
+        return size;
+    }
+
+    /**
+     * Checks the index of the point in a node. Same as Quadtree#checkIndex
+     *
+     * @param node the node
+     * @param x the x coordinate of the point
+     * @param y the y coordinate of the point
+     * @return the index of the point
+     */
+    private int checkIndex(int node, float x, float y){
+        if(x > midX[node]){
+            return y > midY[node] ? 3 : 1;
+        }
+        else{
+            return y > midY[node] ? 2 : 0;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package org.lrima.laop.simulation.map;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.Paint;
+
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * Map read from a {@link MapFile}, used for the tracks made by hand that have too many lines to be kept as objects.
+ * The file is memory-mapped and the lines and the grid are used directly from the mapped buffer:
+ * nothing is copied, so opening a map is fast and the lines are only loaded in memory by the system when they are used. <br/>
+ * The map is already baked. The fitness walls of the mazes are not in their grid, so a maze read as a FileMap gives no fitness.
+ *
+ * @author Léonard
+ */
+public class FileMap extends AbstractMap {
+    private static final Color FITNESS_WALL_COLOR = new Color(50.0/255.0, 200.0/255.0, 36.0/255.0, 1);
+
+    //Kept so the file stays mapped as long as the map is used
+    private final MappedByteBuffer buffer;
+    private final FloatBuffer coordinates;
+    private final int lineCount;
+    private final Point2D start;
+    private final double orientation;
+
+    /**
+     * Creates a map from the parts of a mapped file
+     *
+     * @param buffer the mapped file
+     * @param header the header of the file
+     * @param coordinates the packed coordinates of the lines
+     * @param lineIndex the grid of the file
+     */
+    private FileMap(MappedByteBuffer buffer, MapFile.Header header, FloatBuffer coordinates, LineIndex lineIndex) {
+        super(new ArrayList<>(), header.numberOfFitnessWalls, lineIndex);
+        this.buffer = buffer;
+        this.coordinates = coordinates;
+        this.lineCount = header.lineCount;
+        this.start = header.start;
+        this.orientation = header.orientation;
+    }
+
+    /**
+     * Opens a map file
+     *
+     * @param path the map file
+     * @return the map, already baked
+     * @throws IOException if the file could not be read or is not a map file
+     */
+    public static FileMap open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            //The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            MapFile.Header header = new MapFile.Header(buffer);
+            FloatBuffer coordinates = MapFile.sliceFloats(buffer, header.lineCount * 4);
+            MapFile.checkTypes(buffer, header);
+            MappedGridIndex grid = new MappedGridIndex(buffer, coordinates, header.numberOfFitnessWalls);
+
+            return new FileMap(buffer, header, coordinates, grid);
+        } catch (RuntimeException e) {
+            //A truncated or corrupted file
+            throw new IOException("The map file " + path + " is not valid", e);
+        }
+    }
+
+    /**
+     * The lines are already in the grid of the file
+     */
+    @Override
+    public void bake() {}
+
+    @Override
+    public Point2D getStartPoint() {
+        return start;
+    }
+
+    @Override
+    public double getStartingOrientation() {
+        return orientation;
+    }
+
+    /**
+     * @return the number of lines of the map, including the fitness walls
+     */
+    public int getNumberOfLines() {
+        return lineCount;
+    }
+
+    @Override
+    public void draw(GraphicsContext gc) {
+        Paint bakColor = gc.getStroke();
+        double bakLW = gc.getLineWidth();
+
+        gc.setStroke(FITNESS_WALL_COLOR);
+        gc.setLineWidth(0.2);
+        for (int i = 0; i < getNumberOfFitnessWalls(); i++) {
+            strokeLine(gc, i);
+        }
+
+        gc.setStroke(bakColor);
+        gc.setLineWidth(bakLW);
+        for (int i = getNumberOfFitnessWalls(); i < lineCount; i++) {
+            strokeLine(gc, i);
+        }
+    }
+
+    /**
+     * Draws a line of the file
+     *
+     * @param gc the graphical context to draw to
+     * @param line the index of the line
+     */
+    private void strokeLine(GraphicsContext gc, int line) {
+        gc.strokeLine(coordinates.get(line * 4), coordinates.get(line * 4 + 1), coordinates.get(line * 4 + 2), coordinates.get(line * 4 + 3));
+    }
+}
@@ -0,0 +1,115 @@
+package org.lrima.laop.simulation.map;
+
+import org.lrima.laop.physic.staticobjects.FitnessWallObject;
+import org.lrima.laop.physic.staticobjects.StaticLineObject;
+import org.lrima.laop.utils.MathUtils;
+
+import java.util.ArrayList;
+
+/**
+ * Index putting the static lines in the cells of a regular grid. A query only visits the cells touched by the bounds of the LineCollidable.
+ * Works best when the lines are about the size of a cell, like the walls of a {@link MazeMap}. <br/>
+ * The cells are walked by {@link AbstractGridIndex}, this class keeps their lines in arrays.
+ *
+ * @author Léonard
+ */
+public class GridIndex extends AbstractGridIndex {
+    //The lines of cell i are at the indexes cellStart[i] to cellStart[i + 1] of the arrays below
+    final int[] cellStart;
+    final StaticLineObject[] cellLines;
+    //First cell touched by the bounds of each line in cellLines
+    final int[] lineCellX, lineCellY;
+
+    /**
+     * Creates a grid containing the lines
+     *
+     * @param lines the lines of the map
+     * @param cellSize the width of a cell of the grid
+     * @param minX the x coordinate of the first point forming the bound
+     * @param minY the y coordinate of the first point forming the bound
+     * @param maxX the x coordinate of the second point forming the bound
+     * @param maxY the y coordinate of the second point forming the bound
+     */
+    public GridIndex(ArrayList<StaticLineObject> lines, float cellSize, float minX, float minY, float maxX, float maxY) {
+        super(minX, minY, maxX, maxY, cellSize, (int) ((maxX - minX) / cellSize) + 1, (int) ((maxY - minY) / cellSize) + 1);
+
+        //Count the lines of each cell
+        this.cellStart = new int[cellsX * cellsY + 1];
+        for (StaticLineObject line : lines) {
+            for (int y = cellY(Math.min(line.getY1(), line.getY2())); y <= cellY(Math.max(line.getY1(), line.getY2())); y++) {
+                for (int x = cellX(Math.min(line.getX1(), line.getX2())); x <= cellX(Math.max(line.getX1(), line.getX2())); x++) {
+                    cellStart[y * cellsX + x + 1]++;
+                }
+            }
+        }
+        for (int i = 0; i < cellsX * cellsY; i++) {
+            cellStart[i + 1] += cellStart[i];
+        }
+
+        //Fill the cells
+        int entries = cellStart[cellsX * cellsY];
+        this.cellLines = new StaticLineObject[entries];
+        this.lineCellX = new int[entries];
+        this.lineCellY = new int[entries];
+
+        int[] next = new int[cellsX * cellsY];
+        System.arraycopy(cellStart, 0, next, 0, next.length);
+        for (StaticLineObject line : lines) {
+            int firstX = cellX(Math.min(line.getX1(), line.getX2()));
+            int firstY = cellY(Math.min(line.getY1(), line.getY2()));
+
+            for (int y = firstY; y <= cellY(Math.max(line.getY1(), line.getY2())); y++) {
+                for (int x = firstX; x <= cellX(Math.max(line.getX1(), line.getX2())); x++) {
+                    int entry = next[y * cellsX + x]++;
+                    cellLines[entry] = line;
+                    lineCellX[entry] = firstX;
+                    lineCellY[entry] = firstY;
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a grid that was already built, read from a {@link MapFile}
+     */
+    GridIndex(float minX, float minY, float maxX, float maxY, float cellSize, int cellsX, int cellsY, int[] cellStart, StaticLineObject[] cellLines, int[] lineCellX, int[] lineCellY) {
+        super(minX, minY, maxX, maxY, cellSize, cellsX, cellsY);
+        this.cellStart = cellStart;
+        this.cellLines = cellLines;
+        this.lineCellX = lineCellX;
+        this.lineCellY = lineCellY;
+    }
+
+    @Override
+    int cellStart(int cell) {
+        return cellStart[cell];
+    }
+
+    @Override
+    int lineCellX(int entry) {
+        return lineCellX[entry];
+    }
+
+    @Override
+    int lineCellY(int entry) {
+        return lineCellY[entry];
+    }
+
+    @Override
+    void collide(LineCollidable lineCollidable, int entry, boolean isCar) {
+        StaticLineObject line = cellLines[entry];
+        if(!(line instanceof FitnessWallObject)) {
+            lineCollidable.collide(line);
+        }else if(isCar){
+            lineCollidable.collideFitnessAdder((FitnessWallObject) line);
+        }
+    }
+
+    @Override
+    float intersect(int entry, float x1, float y1, float x2, float y2) {
+        StaticLineObject line = cellLines[entry];
+        if(line instanceof FitnessWallObject) return -1;
+
+        return MathUtils.segmentIntersectionParameter(x1, y1, x2, y2, line.getX1(), line.getY1(), line.getX2(), line.getY2());
+    }
+}
@@ -24,6 +24,33 @@ public interface LineCollidable {
      */
     void collideFitnessAdder(FitnessWallObject line);
 
+    /**
+     * Same as {@link #collide(StaticLineObject)}, for the maps that keep their lines in arrays instead of objects.
+     * By default, the line is given to {@link #collide(StaticLineObject)}
+     *
+     * @param x1 the x coordinate of the first point of the line
+     * @param y1 the y coordinate of the first point of the line
+     * @param x2 the x coordinate of the second point of the line
+     * @param y2 the y coordinate of the second point of the line
+     */
+    default void collide(float x1, float y1, float x2, float y2) {
+        collide(new StaticLineObject(x1, y1, x2, y2));
+    }
+
+    /**
+     * Same as {@link #collideFitnessAdder(FitnessWallObject)}, for the maps that keep their lines in arrays instead of objects.
+     * By default, the wall is given to {@link #collideFitnessAdder(FitnessWallObject)}
+     *
+     * @param id the index of the wall among the fitness walls of the map
+     * @param x1 the x coordinate of the first point of the wall
+     * @param y1 the y coordinate of the first point of the wall
+     * @param x2 the x coordinate of the second point of the wall
+     * @param y2 the y coordinate of the second point of the wall
+     */
+    default void collideFitnessAdder(int id, float x1, float y1, float x2, float y2) {
+        collideFitnessAdder(new FitnessWallObject(x1, y1, x2, y2, id));
+    }
+
     /**
      * Called before each step to pre-calculate the controls of x1, x2, y1, y2 (faster that way).
      *
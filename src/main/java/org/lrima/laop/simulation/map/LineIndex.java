@@ -0,0 +1,46 @@
+package org.lrima.laop.simulation.map;
+
+/**
+ * Index of the static lines of a map used to find the lines that can collide with a LineCollidable
+ *
+ * @author Léonard
+ */
+public interface LineIndex {
+
+    /**
+     * Calls the collide function of the lineCollidable with all the lines of the index that can touch it.
+     * Each line is given at most once to the lineCollidable
+     *
+     * @param lineCollidable the lineCollidable to check the collision of
+     */
+    void collide(LineCollidable lineCollidable);
+
+    /**
+     * Finds the nearest wall touched by each ray. The fitness walls are ignored. <br/>
+     * The rays are packed in an array with four values per ray: <code>x1, y1, x2, y2</code>.
+     * The distance of ray i from its first point to the nearest wall is put in <code>distances[i]</code>, or infinity if it touches no wall.
+     *
+     * @param rays the packed rays
+     * @param from the index of the first ray
+     * @param to the index after the last ray
+     * @param distances the distances of all the rays
+     */
+    void castRays(float[] rays, int from, int to, float[] distances);
+
+    /**
+     * Gets the distance between the first point of a ray and a point of the ray. Gives the same value as
+     * the distance to the point of {@link org.lrima.laop.utils.MathUtils#segmentIntersection}
+     *
+     * @param rays the packed rays
+     * @param ray the index of the ray
+     * @param t the position of the point on the ray, between 0 and 1
+     * @return the distance in pixels
+     */
+    static float distanceOnRay(float[] rays, int ray, float t){
+        float x1 = rays[ray * 4], y1 = rays[ray * 4 + 1];
+        float x = (x1 + t * (rays[ray * 4 + 2] - x1)) - x1;
+        float y = (y1 + t * (rays[ray * 4 + 3] - y1)) - y1;
+
+        return (float) Math.sqrt(x*x + y*y);
+    }
+}
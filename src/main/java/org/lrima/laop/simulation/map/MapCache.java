@@ -0,0 +1,62 @@
+package org.lrima.laop.simulation.map;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Directory keeping the baked mazes in {@link MapFile}s. A maze is found by its size and its seed,
+ * so a maze is only generated the first time it is asked for, even by another run of the program.
+ *
+ * @author Léonard
+ */
+public class MapCache {
+    private final Path directory;
+
+    /**
+     * Creates a cache in a directory. The directory is created if it does not exist.
+     * The cache is only an optimization: if the directory cannot be used, the mazes are generated each time
+     *
+     * @param directory the directory of the map files
+     */
+    public MapCache(Path directory) {
+        this.directory = directory;
+
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            System.err.println("The map cache directory " + directory + " could not be created: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gets a baked maze from the cache, or generates, bakes and saves it if it is not in the cache.
+     * A file that cannot be read is replaced by a new one. If the maze cannot be saved, it is still returned
+     *
+     * @param numberOfSquares the number of squares in the x and y directions
+     * @param seed the seed of the maze
+     * @return the baked maze
+     */
+    public MazeMap maze(int numberOfSquares, long seed) {
+        Path path = directory.resolve("maze-" + numberOfSquares + "-" + seed + ".map");
+
+        if(Files.exists(path)) {
+            try {
+                return MapFile.readMaze(path);
+            } catch (IOException e) {
+                System.err.println("The map " + path + " will be generated again: " + e.getMessage());
+            }
+        }
+
+        MazeMap map = new MazeMap(numberOfSquares, seed);
+        map.bake();
+
+        try {
+            MapFile.write(map, path);
+        } catch (IOException e) {
+            System.err.println("The map " + path + " could not be saved in the cache: " + e.getMessage());
+        }
+
+        return map;
+    }
+}
@@ -0,0 +1,330 @@
+package org.lrima.laop.simulation.map;
+
+import org.lrima.laop.physic.staticobjects.FitnessWallObject;
+import org.lrima.laop.physic.staticobjects.StaticLineObject;
+
+import java.awt.geom.Point2D;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * Reads and writes baked maps in a compact binary file, so the maps do not need to be generated or indexed again. <br/><br/>
+ *
+ * The file contains, in order and in big endian:
+ * <ul>
+ *     <li>the header: <code>MAGIC</code>, <code>VERSION</code>, the number of squares and the seed of the maze (0 for the maps that are not mazes),
+ *     the starting point (x, y) and the starting orientation of the cars</li>
+ *     <li>the number of lines and the number of fitness walls</li>
+ *     <li>the lines, packed as four floats per line: <code>x1, y1, x2, y2</code>. The fitness walls come first, ordered by id,
+ *     so the id of a fitness wall is its index in the file</li>
+ *     <li>the type of each line, one byte per line: <code>WALL</code> or <code>FITNESS_WALL</code></li>
+ *     <li>the {@link GridIndex}: its bounds, the size of its cells, its number of columns and rows, the start of each cell,
+ *     then for each entry the index of its line and the first cell of the line</li>
+ * </ul>
+ * A maze is read back as a {@link MazeMap} with {@link #readMaze(Path)}, and any map file can be used in place with a {@link FileMap}.
+ *
+ * @author Léonard
+ */
+public class MapFile {
+    static final int MAGIC = 0x4C414F50;
+    static final int VERSION = 2;
+
+    static final byte WALL = 0;
+    static final byte FITNESS_WALL = 1;
+
+    private MapFile() {}
+
+    /**
+     * Writes a baked map in a file. The lines are put in the {@link GridIndex} of the map, or in a new grid if the map is indexed differently.
+     * The file is written next to the destination then moved, so another program reading the destination never sees a file that is partly written
+     *
+     * @param map the baked map
+     * @param path the destination
+     * @throws IOException if the file could not be written
+     */
+    public static void write(AbstractMap map, Path path) throws IOException {
+        if(!map.isBaked())
+            throw new IllegalArgumentException("Only the baked maps can be written");
+
+        ArrayList<StaticLineObject> lines = fitnessWallsFirst(map);
+        GridIndex grid = map.lineIndex instanceof GridIndex ? (GridIndex) map.lineIndex : createGrid(lines);
+        IdentityHashMap<StaticLineObject, Integer> lineNumbers = new IdentityHashMap<>();
+
+        int numberOfSquares = 0;
+        long seed = 0;
+        if(map instanceof MazeMap){
+            numberOfSquares = ((MazeMap) map).getNumberOfSquares();
+            seed = ((MazeMap) map).getSeed();
+        }
+
+        Path temporary = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(numberOfSquares);
+            out.writeLong(seed);
+            out.writeDouble(map.getStartPoint().getX());
+            out.writeDouble(map.getStartPoint().getY());
+            out.writeDouble(map.getStartingOrientation());
+
+            out.writeInt(lines.size());
+            out.writeInt(map.getNumberOfFitnessWalls());
+            for (int i = 0; i < lines.size(); i++) {
+                StaticLineObject line = lines.get(i);
+                out.writeFloat(line.getX1());
+                out.writeFloat(line.getY1());
+                out.writeFloat(line.getX2());
+                out.writeFloat(line.getY2());
+                lineNumbers.put(line, i);
+            }
+            for (StaticLineObject line : lines) {
+                out.writeByte(line instanceof FitnessWallObject ? FITNESS_WALL : WALL);
+            }
+
+            out.writeFloat(grid.minX);
+            out.writeFloat(grid.minY);
+            out.writeFloat(grid.maxX);
+            out.writeFloat(grid.maxY);
+            out.writeFloat(grid.cellSize);
+            out.writeInt(grid.cellsX);
+            out.writeInt(grid.cellsY);
+            for (int start : grid.cellStart) {
+                out.writeInt(start);
+            }
+            for (StaticLineObject line : grid.cellLines) {
+                out.writeInt(lineNumbers.get(line));
+            }
+            for (int x : grid.lineCellX) {
+                out.writeInt(x);
+            }
+            for (int y : grid.lineCellY) {
+                out.writeInt(y);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Orders the lines of a map like in the file: the fitness walls by id, then the other lines in the order of the map
+     *
+     * @param map the map
+     * @return the ordered lines
+     */
+    private static ArrayList<StaticLineObject> fitnessWallsFirst(AbstractMap map) {
+        StaticLineObject[] fitnessWalls = new StaticLineObject[map.getNumberOfFitnessWalls()];
+        ArrayList<StaticLineObject> walls = new ArrayList<>();
+
+        for (StaticLineObject line : map.lines) {
+            if(line instanceof FitnessWallObject)
+                fitnessWalls[((FitnessWallObject) line).getId()] = line;
+            else
+                walls.add(line);
+        }
+
+        ArrayList<StaticLineObject> lines = new ArrayList<>(Arrays.asList(fitnessWalls));
+        lines.addAll(walls);
+
+        return lines;
+    }
+
+    /**
+     * Puts the lines of a map that is not indexed by a grid in a new grid. The cells are about twice as large as the lines,
+     * but large enough to not have much more cells than lines
+     *
+     * @param lines the lines of the map
+     * @return the grid
+     */
+    private static GridIndex createGrid(ArrayList<StaticLineObject> lines) {
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        double length = 0;
+
+        for (StaticLineObject line : lines) {
+            minX = Math.min(minX, Math.min(line.getX1(), line.getX2()));
+            minY = Math.min(minY, Math.min(line.getY1(), line.getY2()));
+            maxX = Math.max(maxX, Math.max(line.getX1(), line.getX2()));
+            maxY = Math.max(maxY, Math.max(line.getY1(), line.getY2()));
+            length += Math.hypot(line.getX2() - line.getX1(), line.getY2() - line.getY1());
+        }
+
+        if(lines.isEmpty())
+            return new GridIndex(lines, 1, 0, 0, 1, 1);
+
+        double cellSize = Math.max(2 * length / lines.size(), Math.sqrt((double) (maxX - minX) * (maxY - minY) / lines.size()));
+        return new GridIndex(lines, (float) Math.max(cellSize, 1), minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Reads a maze written by {@link #write(AbstractMap, Path)}. The maze is already baked
+     *
+     * @param path the file
+     * @return the maze
+     * @throws IOException if the file could not be read or is not a map file
+     */
+    public static MazeMap readMaze(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return readMaze(buffer);
+        } catch (RuntimeException e) {
+            //A truncated or corrupted file
+            throw new IOException("The map file " + path + " is not valid", e);
+        }
+    }
+
+    /**
+     * Reads a maze from a buffer containing a map file
+     *
+     * @param buffer the buffer, positioned at the start of the file
+     * @return the maze
+     * @throws IOException if the buffer does not contain a map file
+     */
+    private static MazeMap readMaze(ByteBuffer buffer) throws IOException {
+        Header header = new Header(buffer);
+        if(header.numberOfSquares <= 0)
+            throw new IOException("The map file does not contain a maze");
+
+        float[] coordinates = new float[header.lineCount * 4];
+        sliceFloats(buffer, coordinates.length).get(coordinates);
+
+        ArrayList<StaticLineObject> lines = new ArrayList<>(header.lineCount);
+        for (int i = 0; i < header.lineCount; i++) {
+            float x1 = coordinates[i * 4], y1 = coordinates[i * 4 + 1], x2 = coordinates[i * 4 + 2], y2 = coordinates[i * 4 + 3];
+
+            if(i < header.numberOfFitnessWalls)
+                lines.add(new FitnessWallObject(x1, y1, x2, y2, i));
+            else
+                lines.add(new StaticLineObject(x1, y1, x2, y2));
+        }
+        checkTypes(buffer, header);
+
+        float minX = buffer.getFloat(), minY = buffer.getFloat(), maxX = buffer.getFloat(), maxY = buffer.getFloat();
+        float cellSize = buffer.getFloat();
+        int cellsX = buffer.getInt(), cellsY = buffer.getInt();
+
+        int[] cellStart = readInts(buffer, cellsX * cellsY + 1);
+        int entries = cellStart[cellsX * cellsY];
+        int[] entryLines = readInts(buffer, entries);
+        int[] lineCellX = readInts(buffer, entries);
+        int[] lineCellY = readInts(buffer, entries);
+
+        StaticLineObject[] cellLines = new StaticLineObject[entries];
+        for (int i = 0; i < entries; i++) {
+            cellLines[i] = lines.get(entryLines[i]);
+        }
+
+        GridIndex grid = new GridIndex(minX, minY, maxX, maxY, cellSize, cellsX, cellsY, cellStart, cellLines, lineCellX, lineCellY);
+        return new MazeMap(header.numberOfSquares, header.seed, lines, header.numberOfFitnessWalls, grid, header.start, header.orientation);
+    }
+
+    /**
+     * Checks that the fitness walls are the first lines of the file and moves the position of the buffer after the types
+     *
+     * @param buffer the map file, positioned at the start of the types
+     * @param header the header of the map file
+     * @throws IOException if the types do not match the number of fitness walls
+     */
+    static void checkTypes(ByteBuffer buffer, Header header) throws IOException {
+        for (int i = 0; i < header.lineCount; i++) {
+            byte expected = i < header.numberOfFitnessWalls ? FITNESS_WALL : WALL;
+            if(buffer.get() != expected)
+                throw new IOException("The fitness walls are not the first lines of the map file");
+        }
+    }
+
+    /**
+     * Reads ints from the buffer and moves its position after them
+     *
+     * @param buffer the buffer
+     * @param count the number of ints
+     * @return the ints
+     */
+    private static int[] readInts(ByteBuffer buffer, int count) {
+        int[] values = new int[count];
+        sliceInts(buffer, count).get(values);
+
+        return values;
+    }
+
+    /**
+     * Gets a view of the ints at the position of the buffer, without copying them, and moves its position after them
+     *
+     * @param buffer the buffer
+     * @param count the number of ints
+     * @return the view of the ints
+     */
+    static IntBuffer sliceInts(ByteBuffer buffer, int count) {
+        ByteBuffer slice = buffer.slice();
+        slice.limit(count * Integer.BYTES);
+        buffer.position(buffer.position() + count * Integer.BYTES);
+
+        return slice.asIntBuffer();
+    }
+
+    /**
+     * Gets a view of the floats at the position of the buffer, without copying them, and moves its position after them
+     *
+     * @param buffer the buffer
+     * @param count the number of floats
+     * @return the view of the floats
+     */
+    static FloatBuffer sliceFloats(ByteBuffer buffer, int count) {
+        ByteBuffer slice = buffer.slice();
+        slice.limit(count * Float.BYTES);
+        buffer.position(buffer.position() + count * Float.BYTES);
+
+        return slice.asFloatBuffer();
+    }
+
+    /**
+     * The values at the start of a map file, before the lines
+     */
+    static class Header {
+        final int numberOfSquares;
+        final long seed;
+        final Point2D start;
+        final double orientation;
+        final int lineCount;
+        final int numberOfFitnessWalls;
+
+        /**
+         * Reads the header of a map file
+         *
+         * @param buffer the map file, positioned at its start. Its position is moved to the first line
+         * @throws IOException if the buffer does not contain a map file
+         */
+        Header(ByteBuffer buffer) throws IOException {
+            if(buffer.getInt() != MAGIC)
+                throw new IOException("Not a map file");
+            int version = buffer.getInt();
+            if(version != VERSION)
+                throw new IOException("Unsupported map file version: " + version);
+
+            this.numberOfSquares = buffer.getInt();
+            this.seed = buffer.getLong();
+            this.start = new Point2D.Double(buffer.getDouble(), buffer.getDouble());
+            this.orientation = buffer.getDouble();
+            this.lineCount = buffer.getInt();
+            this.numberOfFitnessWalls = buffer.getInt();
+
+            if(lineCount < 0 || numberOfFitnessWalls < 0 || numberOfFitnessWalls > lineCount)
+                throw new IOException("Wrong number of lines");
+        }
+    }
+}
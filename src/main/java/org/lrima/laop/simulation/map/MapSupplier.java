@@ -0,0 +1,102 @@
+package org.lrima.laop.simulation.map;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Generates and bakes maps on background threads before they are needed. A fixed number of maps are always ready or being generated:
+ * each time a map is taken, the generation of another one starts. <br/>
+ * The background threads are shared by all the suppliers and are daemon threads, so a supplier that is not used anymore does not need to be closed.
+ *
+ * @author Léonard
+ */
+public class MapSupplier<T extends AbstractMap> {
+    private static final ExecutorService GENERATORS = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), runnable -> {
+        Thread thread = new Thread(runnable, "Map generator");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Supplier<T> generator;
+    private final BlockingQueue<Future<T>> maps;
+
+    /**
+     * Creates a supplier and starts the generation of the first maps
+     *
+     * @param generator creates a new map
+     * @param capacity the number of maps generated in advance
+     */
+    public MapSupplier(Supplier<T> generator, int capacity) {
+        this.generator = generator;
+        this.maps = new ArrayBlockingQueue<>(capacity);
+
+        for (int i = 0; i < capacity; i++) {
+            maps.add(generateLater());
+        }
+    }
+
+    /**
+     * Takes the oldest map of the queue and starts the generation of another one. Waits if the map is not baked yet
+     *
+     * @return a baked map
+     */
+    public T next() {
+        Future<T> map = maps.poll();
+        maps.add(generateLater());
+
+        return await(map);
+    }
+
+    /**
+     * Starts the generation of a map that is not put in the queue
+     *
+     * @return the map being generated
+     */
+    public Future<T> generateLater() {
+        return generateLater(generator);
+    }
+
+    /**
+     * Starts the generation of a map on the background threads. The map is baked if the generator does not bake it
+     *
+     * @param generator creates the map
+     * @param <T> the type of the map
+     * @return the map being generated
+     */
+    public static <T extends AbstractMap> Future<T> generateLater(Supplier<T> generator) {
+        return GENERATORS.submit(() -> {
+            T map = generator.get();
+            if(!map.isBaked())
+                map.bake();
+            return map;
+        });
+    }
+
+    /**
+     * Waits for the generation of a map
+     *
+     * @param map the map being generated
+     * @param <T> the type of the map
+     * @return the baked map
+     * @throws CancellationException if the thread is interrupted while it waits. Its interrupt flag is kept so that it can stop
+     * @throws RuntimeException if the generation of the map failed, caused by the exception of the generator
+     */
+    public static <T extends AbstractMap> T await(Future<T> map) {
+        try {
+            return map.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            CancellationException cancelled = new CancellationException("Interrupted while waiting for a map");
+            cancelled.initCause(e);
+            throw cancelled;
+        } catch (ExecutionException e) {
+            throw new RuntimeException("The generation of a map failed", e.getCause());
+        }
+    }
+}
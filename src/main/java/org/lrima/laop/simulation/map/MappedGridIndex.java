@@ -0,0 +1,81 @@
+package org.lrima.laop.simulation.map;
+
+import org.lrima.laop.utils.MathUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Same grid as {@link GridIndex}, read directly from the buffer of a {@link MapFile} instead of arrays of lines.
+ * The cells are walked by {@link AbstractGridIndex}, this class only reads their entries in the buffers.
+ * The lines are the packed coordinates of the file, and are given to the LineCollidables with their coordinates. <br/>
+ * The buffers are only read with absolute positions, so the queries can be made by many threads at the same time.
+ *
+ * @author Léonard
+ */
+class MappedGridIndex extends AbstractGridIndex {
+    //Packed coordinates of the lines. The lines before numberOfFitnessWalls are the fitness walls, numbered in order
+    private final FloatBuffer lines;
+    private final int numberOfFitnessWalls;
+
+    //The lines of cell i are at the indexes cellStart[i] to cellStart[i + 1] of the buffers below
+    private final IntBuffer cellStart;
+    private final IntBuffer cellLines;
+    //First cell touched by the bounds of each line in cellLines
+    private final IntBuffer lineCellX, lineCellY;
+
+    /**
+     * Reads the grid of a map file
+     *
+     * @param buffer the map file, positioned at the start of the grid. Its position is moved after the grid
+     * @param lines the packed coordinates of the lines of the map file
+     * @param numberOfFitnessWalls the number of fitness walls of the map file
+     */
+    MappedGridIndex(ByteBuffer buffer, FloatBuffer lines, int numberOfFitnessWalls) {
+        //The arguments are evaluated in order, like the fields of the file
+        super(buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getInt(), buffer.getInt());
+        this.lines = lines;
+        this.numberOfFitnessWalls = numberOfFitnessWalls;
+
+        this.cellStart = MapFile.sliceInts(buffer, cellsX * cellsY + 1);
+        int entries = cellStart.get(cellsX * cellsY);
+        this.cellLines = MapFile.sliceInts(buffer, entries);
+        this.lineCellX = MapFile.sliceInts(buffer, entries);
+        this.lineCellY = MapFile.sliceInts(buffer, entries);
+    }
+
+    @Override
+    int cellStart(int cell) {
+        return cellStart.get(cell);
+    }
+
+    @Override
+    int lineCellX(int entry) {
+        return lineCellX.get(entry);
+    }
+
+    @Override
+    int lineCellY(int entry) {
+        return lineCellY.get(entry);
+    }
+
+    @Override
+    void collide(LineCollidable lineCollidable, int entry, boolean isCar) {
+        int line = cellLines.get(entry);
+        float x1 = lines.get(line * 4), y1 = lines.get(line * 4 + 1), x2 = lines.get(line * 4 + 2), y2 = lines.get(line * 4 + 3);
+        if(line >= numberOfFitnessWalls) {
+            lineCollidable.collide(x1, y1, x2, y2);
+        }else if(isCar){
+            lineCollidable.collideFitnessAdder(line, x1, y1, x2, y2);
+        }
+    }
+
+    @Override
+    float intersect(int entry, float x1, float y1, float x2, float y2) {
+        int line = cellLines.get(entry);
+        if(line < numberOfFitnessWalls) return -1;
+
+        return MathUtils.segmentIntersectionParameter(x1, y1, x2, y2, lines.get(line * 4), lines.get(line * 4 + 1), lines.get(line * 4 + 2), lines.get(line * 4 + 3));
+    }
+}
@@ -1,18 +1,23 @@
 package org.lrima.laop.simulation.map;
 
+import org.lrima.laop.physic.SimpleCar;
 import org.lrima.laop.physic.staticobjects.FitnessWallObject;
 import org.lrima.laop.physic.staticobjects.StaticLineObject;
-import org.lrima.laop.utils.math.RandomUtils;
 
 import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
- * Map made like a randomly generated maze
+ * Map made like a randomly generated maze. The same seed and size always give the same maze
  * @author Clement Bisaillon
  */
 public class MazeMap extends AbstractMap {
-    private final int MAP_SQUARE_WIDTH = 100;
+    static final int MAP_SQUARE_WIDTH = 100;
     private int numberSquareX;
+    private long seed;
+    private SplittableRandom random;
     private boolean[][] north;
     private boolean[][] south;
     private boolean[][] east;
@@ -23,20 +28,53 @@ public class MazeMap extends AbstractMap {
 	private double orientation;
 
 	/**
-	 * Initiates a new maze map
+	 * Initiates a new maze map with a random seed
 	 * @param numberOfSquareX the number of squares in the x direction.
 	 */
 	public MazeMap(int numberOfSquareX) {
+		this(numberOfSquareX, ThreadLocalRandom.current().nextLong());
+	}
+
+	/**
+	 * Initiates a new maze map
+	 * @param numberOfSquareX the number of squares in the x direction.
+	 * @param seed the seed of the maze
+	 */
+	public MazeMap(int numberOfSquareX, long seed) {
     	super();
     	this.numberSquareX = numberOfSquareX;
+    	this.seed = seed;
+    	this.random = new SplittableRandom(seed);
 
     	this.initMaze();
     	this.generate(1, 1);
     	this.createMazeObjects();
     	this.generateStartLocation();
 
+    	//Only needed to generate the maze
+    	this.random = null;
+    	this.visited = null;
     }
 
+	/**
+	 * Creates a maze map that was already generated and baked, read from a map file
+	 *
+	 * @param numberOfSquareX the number of squares in the x direction
+	 * @param seed the seed of the maze
+	 * @param lines the lines of the maze
+	 * @param numberOfFitnessWalls the number of fitness walls in the lines
+	 * @param lineIndex the index of the lines
+	 * @param start the starting point of the cars
+	 * @param orientation the starting orientation of the cars
+	 */
+	MazeMap(int numberOfSquareX, long seed, ArrayList<StaticLineObject> lines, int numberOfFitnessWalls, LineIndex lineIndex, Point2D start, double orientation) {
+		super(lines, numberOfFitnessWalls, lineIndex);
+		this.numberSquareX = numberOfSquareX;
+		this.seed = seed;
+		this.start = start;
+		this.orientation = orientation;
+	}
+
     /**
      * Initialize the maze with each border present
      */
@@ -68,128 +106,117 @@ public class MazeMap extends AbstractMap {
     }
 
     /**
-     * Generate the maze
+     * Generate the maze. The maze is walked from square to square with a stack: a random unvisited neighbor of the square
+     * on top of the stack is opened and pushed, and the square is removed from the stack when all its neighbors are visited.
      * @param x the position in x to generate the maze from
      * @param y the position in y to generate the maze from
      */
     private void generate(int x, int y) {
-    	visited[x][y] = true;
-    	while(hasNeighbors(x, y)) {
-
-    		while(true) {
-    			int neighbor = RandomUtils.getInteger(0, 3);
-    			if(neighbor == 0 && !visited[x + 1][y]) {
-    				//Right
-    				west[x + 1][y] = false;
-					east[x][y] = false;
-					generate(x + 1, y);
-					break;
-    			}
-    			else if(neighbor == 1 && !visited[x - 1][y]) {
-    				//Left
-    				west[x][y] = false;
-					east[x - 1][y] = false;
-					generate(x - 1, y);
-					break;
-    			}
-    			else if(neighbor == 2 && !visited[x][y - 1]) {
-    				//Top
-    				north[x][y] = false;
-					south[x][y - 1] = false;
-					generate(x, y - 1);
-					break;
-    			}
-    			else if(neighbor == 3 && !visited[x][y + 1]) {
-    				//Bottom
-    				south[x][y] = false;
-					north[x][y + 1] = false;
-					generate(x, y + 1);
-					break;
-    			}
-    		}
-    	}
-    }
+        int size = this.numberSquareX + 2;
+        int[] stack = new int[size * size];
+        int[] neighbors = new int[4];
+        int top = 0;
 
-    /**
-     * Check if a square has neighbors that are not visited
-     * @param x the position in x of the node
-     * @param y the position in y of the node
-     * @return true if the node has a neighbor
-     */
-    private boolean hasNeighbors(int x, int y) {
-    	boolean right = false;
-    	boolean left = false;
-    	boolean top = false;
-    	boolean bottom = false;
-
-    	if(x + 1 < visited.length) {
-    		right = !visited[x + 1][y];
-    	}
+        visited[x][y] = true;
+        stack[top++] = x * size + y;
 
-    	if(x - 1 >= 0) {
-    		left = !visited[x - 1][y];
-    	}
+        while(top > 0) {
+            x = stack[top - 1] / size;
+            y = stack[top - 1] % size;
 
-    	if(y - 1 >= 0) {
-    		top = !visited[x][y - 1];
-    	}
+            //Directions of the unvisited neighbors: 0 right, 1 left, 2 top, 3 bottom
+            int count = 0;
+            if(!visited[x + 1][y]) neighbors[count++] = 0;
+            if(!visited[x - 1][y]) neighbors[count++] = 1;
+            if(!visited[x][y - 1]) neighbors[count++] = 2;
+            if(!visited[x][y + 1]) neighbors[count++] = 3;
 
-    	if(y + 1 < visited[0].length) {
-    		bottom = !visited[x][y + 1];
-    	}
+            if(count == 0) {
+                top--;
+                continue;
+            }
 
-    	return right || left || top || bottom;
+            int neighbor = neighbors[random.nextInt(count)];
+            if(neighbor == 0) {
+                //Right
+                west[x + 1][y] = false;
+                east[x][y] = false;
+                x++;
+            }
+            else if(neighbor == 1) {
+                //Left
+                west[x][y] = false;
+                east[x - 1][y] = false;
+                x--;
+            }
+            else if(neighbor == 2) {
+                //Top
+                north[x][y] = false;
+                south[x][y - 1] = false;
+                y--;
+            }
+            else {
+                //Bottom
+                south[x][y] = false;
+                north[x][y + 1] = false;
+                y++;
+            }
+
+            visited[x][y] = true;
+            stack[top++] = x * size + y;
+        }
     }
 
     /**
-     * Create the lines of the maze from the generated maze
+     * Create the lines of the maze from the generated maze. The wall between two squares is only created once and
+     * the walls following each other on the same line are merged into one line. The openings are fitness walls of the size of a square.
      */
     private void createMazeObjects() {
-    	//North lines
-    	for(int x = 1 ; x < north.length - 1 ; x++) {
-			for(int y = 1 ; y < north[0].length - 1 ; y++) {
-				int x1 = (x - 1) * MAP_SQUARE_WIDTH;
-				int y1 = (y - 1) * MAP_SQUARE_WIDTH;
-				int x2 = x * MAP_SQUARE_WIDTH;
-				int y2 = (y - 1) * MAP_SQUARE_WIDTH;
-				if(north[x][y]) {
-					this.lines.add(new StaticLineObject(x1, y1, x2, y2));
-				}else{
-					this.lines.add(new FitnessWallObject(x1, y1, x2, y2));
-				}
-			}
-		}
-    	//South lines
-    	for(int x = 1 ; x < south.length - 1 ; x++) {
-    		for(int y = 1 ; y < south[0].length - 1 ; y++) {
-    			if(south[x][y]) {
-    				this.lines.add(new StaticLineObject((x - 1) * MAP_SQUARE_WIDTH, y * MAP_SQUARE_WIDTH, x * MAP_SQUARE_WIDTH, y * MAP_SQUARE_WIDTH));
-    			}
-    		}
-    	}
-    	//East lines
-    	for(int x = 1 ; x < east.length - 1 ; x++) {
-    		for(int y = 1 ; y < east[0].length - 1 ; y++) {
-    			int x1 = x * MAP_SQUARE_WIDTH;
-    			int y1 = (y - 1) * MAP_SQUARE_WIDTH;
-    			int x2 = x * MAP_SQUARE_WIDTH;
-    			int y2 = y * MAP_SQUARE_WIDTH;
-
-    			if(east[x][y]) {
-    				this.lines.add(new StaticLineObject(x1, y1, x2, y2));
-    			}else{
-    				this.lines.add(new FitnessWallObject(x1, y1, x2, y2));
-				}
-    		}
-    	}
-    	//West lines
-    	for(int x = 1 ; x < west.length - 1 ; x++) {
-    		for(int y = 1 ; y < west[0].length - 1 ; y++) {
-    			if(west[x][y]) {
-    				this.lines.add(new StaticLineObject((x - 1) * MAP_SQUARE_WIDTH, (y - 1) * MAP_SQUARE_WIDTH, (x - 1) * MAP_SQUARE_WIDTH, y * MAP_SQUARE_WIDTH));
-    			}
-    		}
-    	}
+        //Horizontal lines : the north side of each row and the south side of the last row
+        for(int row = 1 ; row <= numberSquareX + 1 ; row++) {
+            int start = -1;
+            for(int x = 1 ; x <= numberSquareX + 1 ; x++) {
+                boolean wall = x <= numberSquareX && (row <= numberSquareX ? north[x][row] : south[x][numberSquareX]);
+                int lineX = (x - 1) * MAP_SQUARE_WIDTH;
+                int lineY = (row - 1) * MAP_SQUARE_WIDTH;
+
+                if(wall && start == -1) {
+                    start = lineX;
+                }
+                else if(!wall) {
+                    if(start != -1) {
+                        this.lines.add(new StaticLineObject(start, lineY, lineX, lineY));
+                        start = -1;
+                    }
+                    if(x <= numberSquareX) {
+                        this.addFitnessWall(lineX, lineY, lineX + MAP_SQUARE_WIDTH, lineY);
+                    }
+                }
+            }
+        }
+
+        //Vertical lines : the west side of the first column and the east side of each column
+        for(int column = 0 ; column <= numberSquareX ; column++) {
+            int start = -1;
+            for(int y = 1 ; y <= numberSquareX + 1 ; y++) {
+                boolean wall = y <= numberSquareX && (column == 0 ? west[1][y] : east[column][y]);
+                int lineX = column * MAP_SQUARE_WIDTH;
+                int lineY = (y - 1) * MAP_SQUARE_WIDTH;
+
+                if(wall && start == -1) {
+                    start = lineY;
+                }
+                else if(!wall) {
+                    if(start != -1) {
+                        this.lines.add(new StaticLineObject(lineX, start, lineX, lineY));
+                        start = -1;
+                    }
+                    if(y <= numberSquareX) {
+                        this.addFitnessWall(lineX, lineY, lineX, lineY + MAP_SQUARE_WIDTH);
+                    }
+                }
+            }
+        }
     }
 
     /**
@@ -213,6 +240,42 @@ public class MazeMap extends AbstractMap {
 
 	}
 
+    /**
+     * The walls of the maze are on the lines of a grid of MAP_SQUARE_WIDTH, so they are put in a grid of the same size. <br/>
+     * The fitness walls are left out: the progress of the cars is followed with the cells they enter in {@link #collide(LineCollidable)},
+     * so the fitness walls are only drawn
+     */
+    @Override
+    protected LineIndex createLineIndex(float minx, float miny, float maxx, float maxy) {
+        ArrayList<StaticLineObject> walls = new ArrayList<>();
+        for (StaticLineObject line : this.lines) {
+            if(!(line instanceof FitnessWallObject))
+                walls.add(line);
+        }
+
+        return new GridIndex(walls, MAP_SQUARE_WIDTH, minx, miny, maxx, maxy);
+    }
+
+    /**
+     * Collides the car with the walls and tells it which cell of the maze contains its center.
+     * Entering a cell is the same as crossing the fitness wall between two cells
+     *
+     * @param lineCollidable the line that collided with the map
+     */
+    @Override
+    public void collide(LineCollidable lineCollidable) {
+        super.collide(lineCollidable);
+
+        if(lineCollidable instanceof SimpleCar){
+            SimpleCar car = (SimpleCar) lineCollidable;
+            int x = (int) Math.floor(car.getCenterX() / MAP_SQUARE_WIDTH);
+            int y = (int) Math.floor(car.getCenterY() / MAP_SQUARE_WIDTH);
+
+            if(x >= 0 && x < numberSquareX && y >= 0 && y < numberSquareX)
+                car.enterCell(y * numberSquareX + x);
+        }
+    }
+
     @Override
     public Point2D getStartPoint() {
     	return this.start;
@@ -223,7 +286,22 @@ public class MazeMap extends AbstractMap {
 	 *
 	 * @return the starting orientation
 	 */
+	@Override
 	public double getStartingOrientation() {
 		return orientation;
 	}
+
+	/**
+	 * @return the seed of the maze
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @return the number of squares in the x and y directions
+	 */
+	public int getNumberOfSquares() {
+		return numberSquareX;
+	}
 }
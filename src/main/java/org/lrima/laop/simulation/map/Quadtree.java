@@ -4,6 +4,7 @@ import org.apache.commons.math3.genetics.Fitness;
 import org.lrima.laop.physic.SimpleCar;
 import org.lrima.laop.physic.staticobjects.FitnessWallObject;
 import org.lrima.laop.physic.staticobjects.StaticLineObject;
+import org.lrima.laop.utils.MathUtils;
 
 import java.util.ArrayList;
 
@@ -12,13 +13,13 @@ import java.util.ArrayList;
  *
  * @author Léonard
  */
-public class Quadtree {
+public class Quadtree implements LineIndex {
     private final int MIN_OBJECTS = 20;
     private final int MAX_LEVELS = 7;
 
     private int level;
-    private ArrayList<StaticLineObject> lines;
-    private Quadtree[] nodes;
+    ArrayList<StaticLineObject> lines;
+    Quadtree[] nodes;
     private boolean splitted;
 
     //bounds
@@ -77,10 +78,10 @@ public class Quadtree {
     private void split() {
         splitted = true;
         nodes = new Quadtree[4];
-        nodes[0] = new Quadtree(level-1, p1x, p1y, midX, midY);
-        nodes[1] = new Quadtree(level-1, midX, p1y, p2x, midY);
-        nodes[2] = new Quadtree(level-1, p1x, midY, midX, p2y);
-        nodes[3] = new Quadtree(level-1, midX, midY, p2x, p2y);
+        nodes[0] = new Quadtree(level+1, p1x, p1y, midX, midY);
+        nodes[1] = new Quadtree(level+1, midX, p1y, p2x, midY);
+        nodes[2] = new Quadtree(level+1, p1x, midY, midX, p2y);
+        nodes[3] = new Quadtree(level+1, midX, midY, p2x, p2y);
 
         int i = 0;
         while (i < lines.size()) {
@@ -168,7 +169,7 @@ public class Quadtree {
                 return 1;
             }
         }else{
-            if(p1x > midY){
+            if(p1y > midY){
                 return 2;
             }
             else{
@@ -182,6 +183,7 @@ public class Quadtree {
      *
      * @param lineCollidable the lineCollidable to check the collision of
      */
+    @Override
     public void collide(LineCollidable lineCollidable){
         for (StaticLineObject line : lines) {
             if(!(line instanceof FitnessWallObject)) {
@@ -200,4 +202,38 @@ public class Quadtree {
             nodes[i].collide(lineCollidable);
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public void castRays(float[] rays, int from, int to, float[] distances) {
+        for (int i = from; i < to; i++) {
+            distances[i] = Float.POSITIVE_INFINITY;
+            castRay(rays, i, distances);
+        }
+    }
+
+    /**
+     * Keeps the distance to the nearest wall of this node and of the nodes the ray goes through
+     *
+     * @param rays the packed rays
+     * @param ray the index of the ray
+     * @param distances the distances of all the rays
+     */
+    private void castRay(float[] rays, int ray, float[] distances){
+        float x1 = rays[ray * 4], y1 = rays[ray * 4 + 1], x2 = rays[ray * 4 + 2], y2 = rays[ray * 4 + 3];
+
+        for (StaticLineObject line : lines) {
+            if(line instanceof FitnessWallObject) continue;
+
+            float t = MathUtils.segmentIntersectionParameter(x1, y1, x2, y2, line.getX1(), line.getY1(), line.getX2(), line.getY2());
+            if(t >= 0){
+                distances[ray] = Math.min(distances[ray], LineIndex.distanceOnRay(rays, ray, t));
+            }
+        }
+
+        if(nodes == null) return;
+
+        for (int i : getLineIndexAll(x1, y1, x2, y2)) {
+            nodes[i].castRay(rays, ray, distances);
+        }
+    }
+}
@@ -3,20 +3,16 @@ package org.lrima.laop.simulation.sensors;
 import javafx.scene.paint.Color;
 
 import org.lrima.laop.physic.SimpleCar;
-import org.lrima.laop.physic.staticobjects.FitnessWallObject;
-import org.lrima.laop.physic.staticobjects.StaticLineObject;
-import org.lrima.laop.simulation.map.LineCollidable;
 import org.lrima.laop.simulation.sensors.data.ProximityLineSensorData;
-import org.lrima.laop.utils.MathUtils;
 import org.lrima.laop.utils.math.Vector2d;
 
 import java.awt.geom.Point2D;
 
 /**
- * Sensor giving the distance from the car to the wall in a straight line
+ * Sensor giving the distance from the car to the wall in a straight line. The distance is computed with the other sensors by the {@link RayCaster}
  * @author Clement Bisaillon
  */
-public class ProximityLineSensor implements Sensor, LineCollidable {
+public class ProximityLineSensor implements Sensor {
 	//The car that this sensor is attached to
 	private SimpleCar car;
 	private double orientation;
@@ -48,54 +44,42 @@ public class ProximityLineSensor implements Sensor, LineCollidable {
 
     //OPTIMISATION
 
-    @Override
-    public void collide(StaticLineObject line) {
-        float[] v = MathUtils.segmentIntersection(x1, y1, x2, y2, line.getX1(), line.getY1(), line.getX2(), line.getY2());
-
-        if(v!=null){
-            float x = v[0] - x1;
-            float y = v[1] - y1;
-
-            value = Math.min(Math.sqrt(x*x + y*y)*SENSOR_LENGHT_MINUS_1, value);
-        }
-    }
-
-    @Override
-    public void collideFitnessAdder(FitnessWallObject line) {
-        //DO NOTHING
-    }
-
-
-    @Override
+    /**
+     * Computes the segment of the sensor from the position of the car and resets its value. Called before each step
+     */
     public void bake() {
         this.value = 1;
-        x1 = (float) this.car.getCenter().getX();
-        y1 = (float) this.car.getCenter().getY();
+        double centerX = this.car.getCenterX();
+        double centerY = this.car.getCenterY();
+        x1 = (float) centerX;
+        y1 = (float) centerY;
 
         float dx = (float) (SENSOR_LENGHT * Math.cos(orientation + car.getRotation()));
         float dy = (float) (SENSOR_LENGHT * Math.sin(orientation + car.getRotation()));
 
-        x2 = (float) (dx + this.car.getCenter().getX());
-        y2 = (float) (dy + this.car.getCenter().getY());
-    }
-
-    @Override
-    public float getX1() {
-        return x1;
-    }
-
-    @Override
-    public float getY1() {
-        return y1;
+        x2 = (float) (dx + centerX);
+        y2 = (float) (dy + centerY);
     }
 
-    @Override
-    public float getX2() {
-        return x2;
+    /**
+     * Copies the segment computed in {@link #bake()} in the rays, four values per ray
+     *
+     * @param rays the rays of all the sensors
+     * @param ray the index of the ray of this sensor
+     */
+    public void writeRay(float[] rays, int ray) {
+        rays[ray * 4] = x1;
+        rays[ray * 4 + 1] = y1;
+        rays[ray * 4 + 2] = x2;
+        rays[ray * 4 + 3] = y2;
     }
 
-    @Override
-    public float getY2() {
-        return y2;
+    /**
+     * Sets the value of the sensor from the distance to the nearest wall
+     *
+     * @param distance the distance in pixels to the nearest wall, infinite if the sensor touches no wall
+     */
+    public void setHitDistance(float distance) {
+        this.value = Math.min(distance * SENSOR_LENGHT_MINUS_1, 1);
     }
 }
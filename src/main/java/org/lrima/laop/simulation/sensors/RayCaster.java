@@ -0,0 +1,82 @@
+package org.lrima.laop.simulation.sensors;
+
+import org.lrima.laop.physic.SimpleCar;
+import org.lrima.laop.simulation.map.AbstractMap;
+
+import java.util.ArrayList;
+
+/**
+ * Computes the values of the proximity sensors of a group of cars. The rays of all the sensors are packed in one array
+ * and given together to the map, which puts the distance to the nearest wall of each ray in another array.
+ * The cars are cast by ranges, so different ranges can be cast at the same time by different threads.
+ *
+ * @author Léonard
+ */
+public class RayCaster {
+    private ArrayList<SimpleCar> cars;
+    //The sensors of car i are the rays carStart[i] to carStart[i + 1]
+    private int[] carStart;
+    private ProximityLineSensor[] sensors;
+
+    private float[] rays;
+    private float[] distances;
+    //Index of the sensor of each ray. The rays of the dead cars are skipped, so the ray i is not always the sensor i
+    private int[] raySensor;
+
+    /**
+     * Creates a ray caster for the proximity sensors of the cars
+     *
+     * @param cars the cars
+     */
+    public RayCaster(ArrayList<SimpleCar> cars) {
+        this.cars = cars;
+        this.carStart = new int[cars.size() + 1];
+
+        ArrayList<ProximityLineSensor> sensors = new ArrayList<>();
+        for (int i = 0; i < cars.size(); i++) {
+            carStart[i] = sensors.size();
+            for (Sensor sensor : cars.get(i).getSensors()) {
+                if(sensor instanceof ProximityLineSensor)
+                    sensors.add((ProximityLineSensor) sensor);
+            }
+        }
+        carStart[cars.size()] = sensors.size();
+
+        this.sensors = sensors.toArray(new ProximityLineSensor[0]);
+        this.rays = new float[this.sensors.length * 4];
+        this.distances = new float[this.sensors.length];
+        this.raySensor = new int[this.sensors.length];
+    }
+
+    /**
+     * Sets the values of the sensors of the cars between index <code>from</code> (inclusive) and <code>to</code> (exclusive).
+     * The sensors of the dead cars are reset but not cast.
+     *
+     * @param map the map containing the walls
+     * @param from the index of the first car
+     * @param to the index after the last car
+     */
+    public void cast(AbstractMap map, int from, int to) {
+        int first = carStart[from];
+        int count = first;
+
+        for (int car = from; car < to; car++) {
+            boolean dead = cars.get(car).isDead();
+
+            for (int i = carStart[car]; i < carStart[car + 1]; i++) {
+                sensors[i].bake();
+                if(!dead) {
+                    sensors[i].writeRay(rays, count);
+                    raySensor[count] = i;
+                    count++;
+                }
+            }
+        }
+
+        map.castRays(rays, first, count, distances);
+
+        for (int ray = first; ray < count; ray++) {
+            sensors[raySensor[ray]].setHitDistance(distances[ray]);
+        }
+    }
+}
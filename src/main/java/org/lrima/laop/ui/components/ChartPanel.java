@@ -12,11 +12,12 @@ import javafx.scene.layout.Priority;
 import org.lrima.laop.simulation.data.AlgorithmData;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 
 /**
  * Panel to show to progression of the current simulation.
  * This panel shows a chart displaying information about the average fitness
- * of the cars by the generation number
+ * of the cars by the generation number, with one serie for each scope
  * @author Clement Bisaillon
  */
 public class ChartPanel extends HBox {
@@ -24,7 +25,8 @@ public class ChartPanel extends HBox {
 	private NumberAxis yAxis;
 	private LineChart<Number, Number> chart;
 	
-	private XYChart.Series<Number, Number> averageFitnessSerie;
+	//The serie of each scope. Only used in the JavaFX thread
+	private HashMap<String, XYChart.Series<Number, Number>> series;
 
 	/**
 	 * Instantiate a new chart panel with the default parameters
@@ -52,10 +54,8 @@ public class ChartPanel extends HBox {
 		this.chart.setLegendSide(Side.RIGHT);
 		ChartPanel.setHgrow(chart, Priority.ALWAYS);
 
-		//Average fitness serie
-		this.averageFitnessSerie = new XYChart.Series<>();
-		this.averageFitnessSerie.setName("Average fitness");
-		this.chart.getData().add(this.averageFitnessSerie);
+		//Average fitness serie of each scope, added with its first value
+		this.series = new HashMap<>();
 
 		this.getChildren().add(this.chart);
 		
@@ -66,41 +66,46 @@ public class ChartPanel extends HBox {
 	 * @param algorithmData the data of the algorithm
 	 */
 	public void link(AlgorithmData algorithmData){
-	    algorithmData.setOnAddValue((scope) ->{
-	        ArrayList<Double> d = algorithmData.getData().get(scope);
-	        updateChartData(d, scope);
-        });
+	    algorithmData.setOnAddValue(this::updateChartData);
     }
 
 	/**
-	 * Updates the data of the chart
-	 * @param values the data represented as an array of double
-	 * @param name the name of the data serie
+	 * Updates the data of the serie of a scope. It can be called from any thread: the chart is modified in the JavaFX thread
+	 * @param name the name of the data serie, the scope of the values
+	 * @param values a copy of the data represented as an array of double, not modified after
 	 */
-	private void updateChartData(ArrayList<Double> values, String name) {
-	    this.averageFitnessSerie.getData().clear();
-
-		//Add new data to the series from the past generation
+	private void updateChartData(String name, ArrayList<Double> values) {
+		//Replace the data of the serie with the data from the past generations
 		Platform.runLater(() -> {
 		    ArrayList<XYChart.Data<Number, Number>> data = new ArrayList<>();
             for (int i = 0; i < values.size(); i++) {
                 data.add(new XYChart.Data<>(i+1, values.get(i)));
             }
 
+			XYChart.Series<Number, Number> serie = this.series.get(name);
+			if(serie == null){
+				serie = new XYChart.Series<>();
+				serie.setName(name);
+				this.series.put(name, serie);
+				this.chart.getData().add(serie);
+			}
+			serie.getData().setAll(data);
+
+			//The axes fit all the series
 			double max = 0;
-            for (Double value : values) {
-                max = Math.max(max, value);
-            }
+			int generations = 0;
+			for (XYChart.Series<Number, Number> scopeSerie : this.series.values()) {
+				for (XYChart.Data<Number, Number> value : scopeSerie.getData()) {
+					max = Math.max(max, value.getYValue().doubleValue());
+				}
+				generations = Math.max(generations, scopeSerie.getData().size());
+			}
 
             this.yAxis.setTickUnit(max/10);
 
 			this.yAxis.setLowerBound(0);
 			this.yAxis.setUpperBound(max);
-			this.xAxis.setUpperBound(values.size());
-
-			this.chart.setTitle(name);
-
-			this.averageFitnessSerie.getData().addAll(data);
+			this.xAxis.setUpperBound(generations);
 		});
 	}
 }
@@ -2,15 +2,15 @@ package org.lrima.laop.utils;
 
 
 import java.util.Arrays;
-import java.util.function.Function;
+import java.util.function.DoubleUnaryOperator;
 
 /**
  * Class for java.math utilities that are not present in the java Math class
  * @author Clement Bisaillon
  */
 public class MathUtils {
-    public static final Function<Double, Double> LOGISTIC = (x) -> 1.0/(1.0 + Math.exp(-x));
-    public static final Function<Double, Double> TANH = Math::tanh;
+    public static final DoubleUnaryOperator LOGISTIC = (x) -> 1.0/(1.0 + Math.exp(-x));
+    public static final DoubleUnaryOperator TANH = Math::tanh;
     private static final double FLOAT_DELTA = 0.0001;
 
     /**
@@ -77,6 +77,96 @@ public class MathUtils {
     }
 
 
+    /**
+     * Checks for an intersection between two segment without computing the point of the intersection.
+     * The bounds of the segments are compared first so that most of the segments that are far away are rejected without the determinant.
+     *
+     * Line1 (p0x, p0y, p1x, p1y)
+     * Line2 (p2x, p2y, p3x, p3y)
+     *
+     * @param p0x line 1 point 1 x
+     * @param p0y line 1 point 1 y
+     * @param p1x line 1 point 2 x
+     * @param p1y line 1 point 2 y
+     * @param p2x line 2 point 1 x
+     * @param p2y line 2 point 1 y
+     * @param p3x line 2 point 2 x
+     * @param p3y line 2 point 2 y
+     * @return true if the segments intersect, false otherwise
+     */
+    public static boolean segmentsIntersect(float p0x, float p0y, float p1x, float p1y, float p2x, float p2y, float p3x, float p3y){
+        return segmentIntersectionParameter(p0x, p0y, p1x, p1y, p2x, p2y, p3x, p3y) >= 0;
+    }
+
+    /**
+     * Checks for an intersection between two segment. Gives the position of the intersection on the first segment instead of the point
+     * so that nothing is allocated. The point is <code>(p0x + t * (p1x - p0x), p0y + t * (p1y - p0y))</code>, the same as {@link #segmentIntersection}.
+     *
+     * Line1 (p0x, p0y, p1x, p1y)
+     * Line2 (p2x, p2y, p3x, p3y)
+     *
+     * @param p0x line 1 point 1 x
+     * @param p0y line 1 point 1 y
+     * @param p1x line 1 point 2 x
+     * @param p1y line 1 point 2 y
+     * @param p2x line 2 point 1 x
+     * @param p2y line 2 point 1 y
+     * @param p3x line 2 point 2 x
+     * @param p3y line 2 point 2 y
+     * @return -1 if there is no intersection, the position t between 0 and 1 of the intersection on the first segment if there is
+     */
+    public static float segmentIntersectionParameter(float p0x, float p0y, float p1x, float p1y, float p2x, float p2y, float p3x, float p3y){
+        //Reject the segments whose bounds do not overlap
+        if(Math.max(p0x, p1x) < Math.min(p2x, p3x) || Math.max(p2x, p3x) < Math.min(p0x, p1x)
+                || Math.max(p0y, p1y) < Math.min(p2y, p3y) || Math.max(p2y, p3y) < Math.min(p0y, p1y))
+            return -1;
+
+        float s1x = p1x-p0x;
+        float s1y = p1y-p0y;
+        float s2x = p3x-p2x;
+        float s2y = p3y-p2y;
+
+        float determinant = -s2x*s1y + s1x*s2y;
+        if(determinant == 0) return -1;
+
+        determinant = 1f/determinant;
+        float s = ( -s1y*( p0x - p2x ) + s1x * (p0y - p2y) )* determinant;
+        float t = (  s2x*( p0y - p2y ) - s2y * (p0x - p2x) )* determinant;
+
+        if(s >= 0 && s <= 1 && t >= 0 && t <= 1){
+            return t;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Checks for the intersections between a segment and many segments. The segments are packed in an array with four values per segment:
+     * <code>x1, y1, x2, y2</code>.
+     *
+     * @param p0x the line's point 1 x
+     * @param p0y the line's point 1 y
+     * @param p1x the line's point 2 x
+     * @param p1y the line's point 2 y
+     * @param segments the packed segments
+     * @param from the index of the first segment to test
+     * @param to the index after the last segment to test
+     * @return -1 if there is no intersection, the smallest position t between 0 and 1 of the intersections on the line if there is
+     */
+    public static float nearestSegmentIntersection(float p0x, float p0y, float p1x, float p1y, float[] segments, int from, int to){
+        float nearest = -1;
+
+        for (int i = from * 4; i < to * 4; i += 4) {
+            float t = segmentIntersectionParameter(p0x, p0y, p1x, p1y, segments[i], segments[i + 1], segments[i + 2], segments[i + 3]);
+            if(t >= 0 && (nearest < 0 || t < nearest)){
+                nearest = t;
+            }
+        }
+
+        return nearest;
+    }
+
+
     /**
      * Checks for an collision of a rectangle and a line
      *
@@ -98,10 +188,17 @@ public class MathUtils {
      * @return true if the line intersects the rectangle, false otherwise
      */
     public static boolean rectSegmentIntersection(float p0x, float p0y, float p1x, float p1y, float r0x, float r0y, float r1x, float r1y, float r2x, float r2y, float r3x, float r3y){
-        return segmentIntersection(p0x, p0y, p1x, p1y, r0x, r0y, r1x, r1y) != null
-                || segmentIntersection(p0x, p0y, p1x, p1y, r1x, r1y, r2x, r2y) != null
-                || segmentIntersection(p0x, p0y, p1x, p1y, r2x, r2y, r3x, r3y) != null
-                || segmentIntersection(p0x, p0y, p1x, p1y, r3x, r3y, r0x, r0y) != null;
+        //Reject the line if it is outside of the bounds of the rectangle
+        if(Math.max(p0x, p1x) < Math.min(Math.min(r0x, r1x), Math.min(r2x, r3x))
+                || Math.min(p0x, p1x) > Math.max(Math.max(r0x, r1x), Math.max(r2x, r3x))
+                || Math.max(p0y, p1y) < Math.min(Math.min(r0y, r1y), Math.min(r2y, r3y))
+                || Math.min(p0y, p1y) > Math.max(Math.max(r0y, r1y), Math.max(r2y, r3y)))
+            return false;
+
+        return segmentsIntersect(p0x, p0y, p1x, p1y, r0x, r0y, r1x, r1y)
+                || segmentsIntersect(p0x, p0y, p1x, p1y, r1x, r1y, r2x, r2y)
+                || segmentsIntersect(p0x, p0y, p1x, p1y, r2x, r2y, r3x, r3y)
+                || segmentsIntersect(p0x, p0y, p1x, p1y, r3x, r3y, r0x, r0y);
     }
 
     /**
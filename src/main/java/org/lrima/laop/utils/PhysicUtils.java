@@ -14,6 +14,23 @@ public class PhysicUtils {
     private static final double CAR_AREA = 1.5;
     private static final double TRAINER_COEFICIENT = 1;
 
+    /**
+     * Factor of the air resistance applied to the square of the velocity
+     */
+    public static final double AIR_RESISTANCE = AIR_DENSITY * 0.5 * TRAINER_COEFICIENT * CAR_AREA;
+    /**
+     * Factor of the break force applied to the velocity
+     */
+    public static final double BREAK_FORCE = 5_000;
+    /**
+     * Factor of the resistance of the back wheels applied to the velocity that is not in the direction of the car
+     */
+    public static final double DIRECTION_RESISTANCE = 15_000;
+    /**
+     * Force of the back wheels when fully accelerating
+     */
+    public static final int BACK_WHEELS_FORCE = 200_000;
+
 
     /**
      * Calculates the acceleration from the forces
@@ -40,7 +57,7 @@ public class PhysicUtils {
      */
     public static Vector2d airResistance(Vector2d velocity) {
         // https://fr.wikipedia.org/wiki/A%C3%A9rodynamique_automobile
-        return velocity.power2().multiply(AIR_DENSITY * 0.5 * TRAINER_COEFICIENT * CAR_AREA).multiply(velocity.sign().multiply(-1));
+        return velocity.power2().multiply(AIR_RESISTANCE).multiply(velocity.sign().multiply(-1));
     }
 
     /**
@@ -51,8 +68,7 @@ public class PhysicUtils {
      * @return the force that the breaks are applying
      */
     public static Vector2d breakForce(Vector2d velocity, double carControl) {
-        double c = 5_000;
-        return velocity.multiply(carControl * c).multiply(-1);
+        return velocity.multiply(carControl * BREAK_FORCE).multiply(-1);
     }
 
     /**
@@ -63,10 +79,8 @@ public class PhysicUtils {
      * @return the friction dur to the backwheels
      */
     public static Vector2d directionResistance(Vector2d direction, Vector2d velocity) {
-        double c = 15_000;
-
         Vector2d resistance = velocity.subtract(direction.project(velocity));
-        return resistance.multiply(-c);
+        return resistance.multiply(-DIRECTION_RESISTANCE);
     }
 
     /**
@@ -77,8 +91,7 @@ public class PhysicUtils {
      * @return the thrust force
      */
     public static Vector2d accelFromBackWeels(double accelAmount, double rotation) {
-        int initForce = 200_000;
-        return new Vector2d(0, initForce * accelAmount).rotate(rotation, Vector2d.origin);
+        return new Vector2d(0, BACK_WHEELS_FORCE * accelAmount).rotate(rotation, Vector2d.origin);
     }
 
     public static double angularAccel(double wheelDirection, Vector2d velocity) {
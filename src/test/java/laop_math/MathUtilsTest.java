@@ -0,0 +1,56 @@
+package laop_math;
+
+import org.junit.jupiter.api.Test;
+import org.lrima.laop.utils.MathUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test the intersection methods of MathUtils
+ * @author Léonard
+ */
+public class MathUtilsTest {
+
+    private float floatError = 0.00001f;
+
+    @Test
+    public void segmentIntersectionParameterTest(){
+        float t = MathUtils.segmentIntersectionParameter(0, 0, 10, 0, 4, -5, 4, 5);
+        assertEquals(0.4f, t, this.floatError);
+
+        float[] point = MathUtils.segmentIntersection(0, 0, 10, 0, 4, -5, 4, 5);
+        assertNotNull(point);
+        assertEquals(point[0], 0 + t * 10, this.floatError);
+    }
+
+    @Test
+    public void noIntersectionTest(){
+        //Parallel
+        assertEquals(-1, MathUtils.segmentIntersectionParameter(0, 0, 10, 0, 0, 1, 10, 1));
+        //Bounds do not overlap
+        assertEquals(-1, MathUtils.segmentIntersectionParameter(0, 0, 10, 0, 20, -5, 20, 5));
+        //Would cross if the segments were longer
+        assertFalse(MathUtils.segmentsIntersect(0, 0, 10, 10, 0, 20, 8, 12));
+    }
+
+    @Test
+    public void nearestSegmentIntersectionTest(){
+        float[] segments = {
+                8, -1, 8, 1,
+                20, -1, 20, 1,
+                3, -1, 3, 1,
+        };
+
+        assertEquals(0.3f, MathUtils.nearestSegmentIntersection(0, 0, 10, 0, segments, 0, 3), this.floatError);
+        assertEquals(0.8f, MathUtils.nearestSegmentIntersection(0, 0, 10, 0, segments, 0, 2), this.floatError);
+        assertEquals(-1, MathUtils.nearestSegmentIntersection(0, 0, 10, 0, segments, 1, 2));
+    }
+
+    @Test
+    public void rectSegmentIntersectionTest(){
+        assertTrue(MathUtils.rectSegmentIntersection(-5, 5, 5, 5, 0, 0, 10, 0, 10, 10, 0, 10));
+        assertFalse(MathUtils.rectSegmentIntersection(-5, 20, 5, 20, 0, 0, 10, 0, 10, 10, 0, 10));
+        //Inside the rectangle without touching the sides
+        assertFalse(MathUtils.rectSegmentIntersection(2, 2, 8, 8, 0, 0, 10, 0, 10, 10, 0, 10));
+    }
+}
@@ -1,6 +1,11 @@
 package org.lrima.laop.network.nn;
 
 import org.junit.jupiter.api.Test;
+import org.lrima.laop.utils.MathUtils;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * @author Léonard
@@ -51,4 +56,190 @@ public class NeuralNetworkTest {
 
     }
 
+    @Test
+    public void denseLayerTest(){
+        double[][] weights = new double[][]{
+                {2, -1, 3, 2},
+                {1, 3, -2, 3},
+                {5, 2, -4, 4},
+                {3, 2, 1, 1}
+        };
+        double[] inputs = new double[]{0.2, -0.5, 0.1};
+
+        NeuralNetwork neuralNetwork = new NeuralNetwork(3);
+        neuralNetwork.getLayers().add(new DenseLayer(weights, MathUtils.LOGISTIC));
+
+        double[] predictionNN = neuralNetwork.predict(inputs);
+        for(int i = 0; i < weights.length; i++){
+            double sum = weights[i][3];
+            for(int j = 0; j < inputs.length; j++){
+                sum += weights[i][j] * inputs[j];
+            }
+
+            assertEquals(1.0/(1.0 + Math.exp(-sum)), predictionNN[i], this.floatError);
+        }
+    }
+
+    @Test
+    public void predictWithoutAllocationTest(){
+        NeuralNetwork neuralNetwork = new NeuralNetwork(5);
+        neuralNetwork.addDenseLayer(5, MathUtils.TANH);
+        neuralNetwork.addDenseLayer(8, MathUtils.TANH);
+        neuralNetwork.addDenseLayer(2, MathUtils.TANH);
+
+        double[] output = new double[2];
+        for (int i = 0; i < 3; i++) {
+            double[] inputs = new double[]{i, 0.5, -1, 0.25, 2};
+            neuralNetwork.predict(inputs, output);
+
+            assertArrayEquals(neuralNetwork.predict(inputs), output);
+        }
+    }
+
+    @Test
+    public void weightsTest(){
+        NeuralNetwork neuralNetwork = new NeuralNetwork(5);
+        neuralNetwork.addDenseLayer(5, MathUtils.TANH);
+        neuralNetwork.addDenseLayer(2, MathUtils.TANH);
+
+        double[] weights = neuralNetwork.getAllWeights();
+        assertEquals(5 * 6 + 2 * 6, weights.length);
+
+        NeuralNetwork copy = new NeuralNetwork(neuralNetwork.getTopology(), weights);
+        assertArrayEquals(weights, copy.getAllWeights());
+
+        double[] inputs = new double[]{1, 0.5, -1, 0.25, 2};
+        assertArrayEquals(neuralNetwork.predict(inputs), copy.predict(inputs));
+    }
+
+    @Test
+    public void populationNetworkTest(){
+        NeuralNetwork[] networks = new NeuralNetwork[3];
+        PopulationNetwork population = null;
+        for (int i = 0; i < networks.length; i++) {
+            networks[i] = new NeuralNetwork(5);
+            networks[i].addDenseLayer(4, MathUtils.TANH);
+            networks[i].addDenseLayer(2, MathUtils.TANH);
+
+            if(population == null)
+                population = new PopulationNetwork(networks[i].getTopology(), networks.length, MathUtils.TANH);
+            population.setWeights(i, networks[i].getAllWeights());
+        }
+
+        double[] inputs = new double[networks.length * 5];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = Math.sin(i);
+        }
+        double[] outputs = new double[networks.length * 2];
+        population.predict(inputs, outputs);
+
+        for (int i = 0; i < networks.length; i++) {
+            double[] prediction = networks[i].predict(Arrays.copyOfRange(inputs, i * 5, i * 5 + 5));
+            assertArrayEquals(prediction, Arrays.copyOfRange(outputs, i * 2, i * 2 + 2));
+        }
+    }
+
+    @Test
+    public void precisionTest(){
+        //Fixed weights between -1 and 1, so the error of the quantization is known
+        int[] topology = new int[]{5, 4, 2};
+        double[] genome = new double[4 * 6 + 2 * 5];
+        for (int i = 0; i < genome.length; i++) {
+            genome[i] = Math.sin(i + 1);
+        }
+        NeuralNetwork neuralNetwork = new NeuralNetwork(topology, genome);
+
+        double[] inputs = new double[]{0.9, 0.5, 0.1, 0.25, 0.75};
+        double[] expected = neuralNetwork.predict(inputs);
+
+        neuralNetwork.setPrecision(Precision.FLOAT);
+        assertArrayEquals(expected, neuralNetwork.predict(inputs), this.floatError);
+
+        //Each quantized weight is at most half a step of 1/127 away, and the inputs and the outputs of tanh are at most 1.
+        //The error of a layer is that of its weights plus the error of its inputs multiplied by the weights, and tanh does not increase it
+        double maxError = 0;
+        for (int l = 1; l < topology.length; l++) {
+            maxError = topology[l - 1] * (1.0 / 127 / 2) + topology[l - 1] * maxError;
+        }
+        neuralNetwork.setPrecision(Precision.INT8);
+        assertArrayEquals(expected, neuralNetwork.predict(inputs), maxError + this.floatError);
+
+        PopulationNetwork population = new PopulationNetwork(neuralNetwork.getTopology(), 1, MathUtils.TANH, Precision.INT8);
+        population.setWeights(0, neuralNetwork.getAllWeights());
+        double[] outputs = new double[2];
+        population.predict(inputs, outputs);
+        assertArrayEquals(neuralNetwork.predict(inputs), outputs);
+
+        //The weights stay in double
+        neuralNetwork.setPrecision(Precision.DOUBLE);
+        assertArrayEquals(expected, neuralNetwork.predict(inputs));
+    }
+
+    @Test
+    public void genomeTest(){
+        NeuralNetwork neuralNetwork = new NeuralNetwork(5);
+        neuralNetwork.addDenseLayer(5, MathUtils.TANH);
+        neuralNetwork.addDenseLayer(2, MathUtils.TANH);
+
+        double[] inputs = new double[]{1, 0.5, -1, 0.25, 2};
+        double[] prediction = neuralNetwork.predict(inputs);
+
+        double[] genome = neuralNetwork.getGenome();
+        assertArrayEquals(neuralNetwork.getAllWeights(), genome);
+        assertSame(genome, neuralNetwork.getGenome());
+        assertArrayEquals(prediction, neuralNetwork.predict(inputs));
+
+        //The network and the copy use the same genome
+        NeuralNetwork copy = new NeuralNetwork(neuralNetwork.getTopology(), genome);
+        for (int i = 0; i < genome.length; i++) {
+            genome[i] += 0.5;
+        }
+        assertArrayEquals(neuralNetwork.predict(inputs), copy.predict(inputs));
+        assertArrayEquals(genome, copy.getAllWeights());
+        assertNotEquals(prediction[0], neuralNetwork.predict(inputs)[0]);
+    }
+
+    @Test
+    public void compilerTest(){
+        NeuralNetwork neuralNetwork = new NeuralNetwork(5);
+        neuralNetwork.addDenseLayer(5, MathUtils.TANH);
+        neuralNetwork.addDenseLayer(8, MathUtils.LOGISTIC);
+        neuralNetwork.addDenseLayer(2, MathUtils.TANH);
+        assertTrue(NetworkCompiler.canCompile(neuralNetwork));
+
+        NetworkEvaluator evaluator = NetworkCompiler.compile(neuralNetwork);
+        double[] output = new double[2];
+        for (int i = 0; i < 10; i++) {
+            double[] inputs = new double[]{Math.sin(i), 0.5, -1, 0.25 * i, 2};
+            evaluator.predict(inputs, output);
+
+            assertArrayEquals(neuralNetwork.predict(inputs), output);
+        }
+
+        //Other activation functions use the layers
+        NeuralNetwork other = new NeuralNetwork(3);
+        other.addDenseLayer(2, x -> Math.max(0, x));
+        assertFalse(NetworkCompiler.canCompile(other));
+
+        double[] inputs = new double[]{1, -2, 3};
+        NetworkCompiler.compile(other).predict(inputs, output);
+        assertArrayEquals(other.predict(inputs), output);
+
+        //The prediction of a big network would be too long for the JIT, so it uses a copy of its layers
+        NeuralNetwork big = new NeuralNetwork(16);
+        big.addDenseLayer(64, MathUtils.TANH);
+        big.addDenseLayer(32, MathUtils.TANH);
+        big.addDenseLayer(2, MathUtils.TANH);
+        assertFalse(NetworkCompiler.canCompile(big));
+
+        NetworkEvaluator bigEvaluator = NetworkCompiler.compile(big);
+        double[] bigInputs = new double[16];
+        Arrays.fill(bigInputs, 0.5);
+        double[] expected = big.predict(bigInputs);
+        for (int i = 0; i < big.getGenome().length; i++) {
+            big.getGenome()[i] += 0.5;
+        }
+        bigEvaluator.predict(bigInputs, output);
+        assertArrayEquals(expected, output);
+    }
 }
\ No newline at end of file